@@ -11,6 +11,7 @@ import burp.utils.BurpCryptoMenuFactory;
 import burp.utils.BurpStateListener;
 import burp.utils.DictLogManager;
 import burp.utils.Utils;
+import burp.webcipher.WebCipherUIHandler;
 import burp.zuc.ZUCUIHandler;
 import cn.hutool.crypto.SecureUtil;
 import org.iq80.leveldb.DB;
@@ -83,16 +84,34 @@ public class BurpExtender implements IBurpExtender, ITab {
     public JPanel pbkdf2Panel;
     public PBKDF2UIHandler PBKDF2UI;
 
+    // XXTEA、TEA、Blowfish、RC4等前端常见加密的界面面板和处理器
+    public JPanel webCipherPanel;
+    public WebCipherUIHandler WebCipherUI;
+
     /**
-     * 注册自定义的Intruder负载处理器。
+     * 检查处理器名称是否可用，名称已存在时提示用户。应在创建处理器之前调用，避免白白加载js引擎等资源。
+     *
+     * @param extName 处理器的名称。
+     * @return 名称可用返回true，否则返回false。
+     */
+    public boolean CheckIPProcessorName(String extName) {
+        if (IPProcessors.containsKey(extName)) {
+            JOptionPane.showMessageDialog(mainPanel, "This name already exist!");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 注册自定义的Intruder负载处理器。注册失败时处理器会被释放。
      *
      * @param extName 处理器的名称，用于标识处理器。
      * @param processor 要注册的处理器实例。
      * @return 如果注册成功返回true，否则返回false。
      */
     public boolean RegIPProcessor(String extName, IIntruderPayloadProcessor processor) {
-        if (IPProcessors.containsKey(extName)) {
-            JOptionPane.showMessageDialog(mainPanel, "This name already exist!");
+        if (!CheckIPProcessorName(extName)) {
+            CloseIPProcessor(processor);
             return false;
         }
         callbacks.registerIntruderPayloadProcessor(processor);
@@ -110,6 +129,22 @@ public class BurpExtender implements IBurpExtender, ITab {
             IIntruderPayloadProcessor processor = IPProcessors.get(extName);
             callbacks.removeIntruderPayloadProcessor(processor);
             IPProcessors.remove(extName);
+            CloseIPProcessor(processor);
+        }
+    }
+
+    /**
+     * 释放负载处理器持有的资源，例如HtmlUnit的WebClient。
+     *
+     * @param processor 要释放的处理器实例。
+     */
+    public void CloseIPProcessor(IIntruderPayloadProcessor processor) {
+        if (processor instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) processor).close();
+            } catch (Exception e) {
+                e.printStackTrace(stderr);
+            }
         }
     }
 
@@ -157,6 +192,7 @@ public class BurpExtender implements IBurpExtender, ITab {
         this.SM4UI = new SM4UIHandler(this);
         this.ZUCUI = new ZUCUIHandler(this);
         this.PBKDF2UI = new PBKDF2UIHandler(this);
+        this.WebCipherUI = new WebCipherUIHandler(this);
         SwingUtilities.invokeLater(() -> {
             BurpExtender bthis = BurpExtender.this;
             bthis.mainPanel = new JTabbedPane();
@@ -174,6 +210,8 @@ public class BurpExtender implements IBurpExtender, ITab {
             bthis.mainPanel.addTab("ZUC", bthis.zucPanel);
             bthis.pbkdf2Panel = PBKDF2UI.getPanel();
             bthis.mainPanel.addTab("PBKDF2", bthis.pbkdf2Panel);
+            bthis.webCipherPanel = WebCipherUI.getPanel();
+            bthis.mainPanel.addTab("Web Ciphers", bthis.webCipherPanel);
             bthis.execJsPanel = JsUI.getPanel();
             bthis.mainPanel.addTab("Exec Js", bthis.execJsPanel);
             bthis.callbacks.addSuiteTab(bthis);
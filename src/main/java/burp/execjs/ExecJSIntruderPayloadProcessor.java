@@ -2,38 +2,152 @@ package burp.execjs;
 
 import burp.BurpExtender;
 import burp.IIntruderPayloadProcessor;
-import burp.execjs.engine.HtmlUnitEngine;
-import burp.execjs.engine.JreBuiltInEngine;
 import burp.execjs.engine.RhinoEngine;
+import burp.execjs.engine.RhinoProfiler;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class ExecJSIntruderPayloadProcessor implements IIntruderPayloadProcessor {
+public class ExecJSIntruderPayloadProcessor implements IIntruderPayloadProcessor, AutoCloseable {
     private BurpExtender parent;
     private final String extName;
-    private final IJsEngine jsEngine;
+    private final JsConfig config;
+    private final String methodName;
+    private final boolean byteMode;
+    // engine and registry key change together when the script file is reloaded.
+    private volatile Loaded loaded;
+    private Closeable scriptWatch;
+    private boolean closed;
+
+    /**
+     * An engine with the calls in progress on it. Once retired by a reload or close, its registry reference
+     * is released when the last of those calls returns, so they never run on a closed engine.
+     */
+    private static class Loaded {
+        final IJsEngine engine;
+        final String runtimeKey;
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean retired;
+
+        Loaded(IJsEngine engine, String runtimeKey) {
+            this.engine = engine;
+            this.runtimeKey = runtimeKey;
+        }
+
+        /**
+         * @return false when retired in the meantime, the caller has to pick up the newer engine.
+         */
+        boolean enter() {
+            calls.incrementAndGet();
+            if (retired) {
+                exit();
+                return false;
+            }
+            return true;
+        }
+
+        void exit() {
+            if (calls.decrementAndGet() == 0 && retired) {
+                release();
+            }
+        }
+
+        void retire() {
+            retired = true;
+            if (calls.get() == 0) {
+                release();
+            }
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                JsRuntimeRegistry.release(runtimeKey);
+            }
+        }
+    }
 
     public ExecJSIntruderPayloadProcessor(final BurpExtender newParent, String extName, JsConfig config) {
         this.parent = newParent;
         this.extName = extName;
-        switch (config.JsEngine){
-            case HtmlUnit:
-                this.jsEngine = new HtmlUnitEngine();
-                break;
-            case JreBuiltIn:
-                this.jsEngine = new JreBuiltInEngine();
-                break;
-            default:
-                this.jsEngine = new RhinoEngine();
-        }
-        this.jsEngine.setParent(parent);
+        this.config = config;
+        this.methodName = config.MethodName;
+        this.byteMode = config.ByteMode;
         try {
-            this.jsEngine.setConfig(config);
+            this.loaded = load();
+            int shared = JsRuntimeRegistry.references(loaded.runtimeKey);
+            if (shared > 1) {
+                this.parent.stdout.println(getProcessorName() + " shares its js runtime with " + (shared - 1) + " other processor(s).");
+            }
         } catch (Exception e) {
             this.parent.callbacks.issueAlert(e.toString());
             this.parent.stderr.println();
             e.printStackTrace(this.parent.stderr);
         }
+        if (hasScriptFile()) {
+            try {
+                // watched even when the first load failed, saving a fixed file brings the processor up.
+                scriptWatch = JsScriptFile.watch(Paths.get(config.ScriptFile), this::reload);
+            } catch (IOException e) {
+                this.parent.stderr.println("cannot watch " + config.ScriptFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private boolean hasScriptFile() {
+        return config.ScriptFile != null && !config.ScriptFile.trim().isEmpty();
+    }
+
+    /**
+     * Acquire the engine for the current script, the script file (when there is one) is read again.
+     */
+    private Loaded load() throws Exception {
+        JsConfig effective = effectiveConfig(config);
+        IJsEngine engine = JsRuntimeRegistry.acquire(effective, parent);
+        return new Loaded(engine, JsRuntimeRegistry.key(effective));
+    }
+
+    /**
+     * The config engines are loaded with, the script file (when there is one) is read and put ahead of the code.
+     */
+    static JsConfig effectiveConfig(JsConfig config) throws IOException {
+        if (config.ScriptFile == null || config.ScriptFile.trim().isEmpty()) {
+            return config;
+        }
+        JsConfig effective = config.copy();
+        effective.CryptoJsCode = JsScriptFile.read(Paths.get(config.ScriptFile)) + "\r\n" + config.CryptoJsCode;
+        return effective;
+    }
+
+    /**
+     * Called by the watcher thread once the script file changed. The new engine is built while the old one
+     * keeps serving, then swapped in, so Intruder keeps using the same registered processor.
+     */
+    private synchronized void reload() {
+        if (closed) {
+            return;
+        }
+        Loaded next;
+        try {
+            next = load();
+        } catch (Exception e) {
+            this.parent.callbacks.issueAlert(getProcessorName() + " reload failed, keeping the previous script: " + e);
+            this.parent.stderr.println();
+            e.printStackTrace(this.parent.stderr);
+            return;
+        }
+        Loaded previous = loaded;
+        loaded = next;
+        if (previous != null) {
+            previous.retire();
+        }
+        this.parent.stdout.println(getProcessorName() + " reloaded " + config.ScriptFile + ".");
     }
 
     @Override
@@ -44,7 +158,8 @@ public class ExecJSIntruderPayloadProcessor implements IIntruderPayloadProcessor
     @Override
     public byte[] processPayload(byte[] currentPayload, byte[] originalPayload, byte[] baseValue) {
         try {
-            byte[] result = jsEngine.eval(new String(currentPayload, StandardCharsets.UTF_8)).getBytes("UTF-8");
+            byte[] result = withEngine(engine -> byteMode ? engine.evalBytes(methodName, currentPayload) :
+                    engine.eval(methodName, new String(currentPayload, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8));
             parent.dict.Log(result, originalPayload);
             return result;
         } catch (Exception e) {
@@ -54,4 +169,84 @@ public class ExecJSIntruderPayloadProcessor implements IIntruderPayloadProcessor
             return null;
         }
     }
+
+    /**
+     * Encrypt many payloads with a single call into the js engine, results are logged for plaintext lookup like Intruder payloads.
+     */
+    public List<byte[]> processPayloads(List<byte[]> payloads) throws Exception {
+        return withEngine(engine -> processPayloads(engine, payloads));
+    }
+
+    private List<byte[]> processPayloads(IJsEngine engine, List<byte[]> payloads) throws Exception {
+        if (byteMode) {
+            ArrayList<byte[]> output = new ArrayList<>(payloads.size());
+            for (byte[] payload : payloads) {
+                byte[] result = engine.evalBytes(methodName, payload);
+                parent.dict.Log(result, payload);
+                output.add(result);
+            }
+            return output;
+        }
+        ArrayList<String> params = new ArrayList<>(payloads.size());
+        for (byte[] payload : payloads) {
+            params.add(new String(payload, StandardCharsets.UTF_8));
+        }
+        List<String> results = engine.evalBatch(methodName, params);
+        if (results.size() != payloads.size()) {
+            throw new IllegalStateException("batch returned " + results.size() + " results for " + payloads.size() + " payloads.");
+        }
+        ArrayList<byte[]> output = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            byte[] result = results.get(i).getBytes(StandardCharsets.UTF_8);
+            parent.dict.Log(result, payloads.get(i));
+            output.add(result);
+        }
+        return output;
+    }
+
+    /**
+     * @return the profiler of a Rhino processor added with profiling on, otherwise null.
+     */
+    public RhinoProfiler getProfiler() {
+        Loaded current = loaded;
+        return current != null && current.engine instanceof RhinoEngine ? ((RhinoEngine) current.engine).getProfiler() : null;
+    }
+
+    private interface EngineCall<T> {
+        T call(IJsEngine engine) throws Exception;
+    }
+
+    /**
+     * Run {@code call} on the current engine, which stays open until it returns even if a reload swaps it out.
+     */
+    private <T> T withEngine(EngineCall<T> call) throws Exception {
+        Loaded current;
+        do {
+            current = loaded;
+            if (current == null) {
+                throw new IllegalStateException("js code not loaded.");
+            }
+        } while (!current.enter());
+        try {
+            return call.call(current.engine);
+        } finally {
+            current.exit();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (scriptWatch != null) {
+            try {
+                scriptWatch.close();
+            } catch (IOException ignored) {
+            }
+        }
+        if (loaded != null) {
+            Loaded previous = loaded;
+            loaded = null;
+            previous.retire();
+        }
+    }
 }
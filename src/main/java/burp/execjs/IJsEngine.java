@@ -2,8 +2,33 @@ package burp.execjs;
 
 import burp.BurpExtender;
 
+import java.util.List;
+
+/**
+ * A loaded script. Engines may be shared by several processors (see JsRuntimeRegistry), which is why the
+ * function to call is passed on every call instead of being part of the configuration.
+ */
 public interface IJsEngine {
+    /**
+     * Suffix of the optional user function that takes an array of inputs and returns an array of results.
+     */
+    String BatchSuffix = "Batch";
+    /**
+     * How long a returned promise may take to settle when the processor has no timeout of its own.
+     */
+    long DefaultAwaitMillis = 10000;
+
     void setConfig(JsConfig config) throws Exception;
     void setParent(BurpExtender parent);
-    String eval(String param) throws Exception;
+    String eval(String methodName, String param) throws Exception;
+    List<String> evalBatch(String methodName, List<String> params) throws Exception;
+
+    /**
+     * Byte mode: the payload goes in as a Uint8Array, an ArrayBuffer or typed array result comes back as is
+     * and a string result is UTF-8 encoded.
+     */
+    default byte[] evalBytes(String methodName, byte[] param) throws Exception {
+        throw new UnsupportedOperationException("byte mode is not supported by " + getClass().getSimpleName() + ".");
+    }
+    void close();
 }
\ No newline at end of file
@@ -0,0 +1,371 @@
+package burp.execjs;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.Token;
+import org.mozilla.javascript.ast.ArrayLiteral;
+import org.mozilla.javascript.ast.Assignment;
+import org.mozilla.javascript.ast.AstNode;
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.ExpressionStatement;
+import org.mozilla.javascript.ast.FunctionCall;
+import org.mozilla.javascript.ast.FunctionNode;
+import org.mozilla.javascript.ast.InfixExpression;
+import org.mozilla.javascript.ast.KeywordLiteral;
+import org.mozilla.javascript.ast.Name;
+import org.mozilla.javascript.ast.NodeVisitor;
+import org.mozilla.javascript.ast.NumberLiteral;
+import org.mozilla.javascript.ast.ObjectLiteral;
+import org.mozilla.javascript.ast.ObjectProperty;
+import org.mozilla.javascript.ast.PropertyGet;
+import org.mozilla.javascript.ast.Scope;
+import org.mozilla.javascript.ast.StringLiteral;
+import org.mozilla.javascript.ast.Symbol;
+import org.mozilla.javascript.ast.VariableDeclaration;
+import org.mozilla.javascript.ast.VariableInitializer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cuts a bundle down to what the entry functions need. Top level statements are kept when they declare or
+ * mention a global the kept code uses, webpack module maps keep only the modules that are required by id.
+ * Dropped modules become {@code 0} so the ids of the others do not move. This is a static approximation,
+ * code reaching globals through computed names (window["a" + b]) has to list them as extra roots.
+ */
+public class JsBundleSlicer {
+    private static final Set<String> GlobalObjects = new HashSet<>(Arrays.asList("window", "self", "globalThis", "global"));
+    // builtins and the module system probes of UMD wrappers, following them would keep every library in the bundle.
+    private static final Set<String> Ambient = new HashSet<>(Arrays.asList("window", "self", "globalThis", "global",
+            "define", "module", "exports", "require", "document", "navigator", "location", "console", "undefined",
+            "Object", "Function", "Array", "String", "Number", "Boolean", "Symbol", "Math", "JSON", "Date", "RegExp",
+            "Error", "TypeError", "RangeError", "Promise", "parseInt", "parseFloat", "isNaN", "isFinite", "Uint8Array",
+            "ArrayBuffer", "encodeURIComponent", "decodeURIComponent", "escape", "unescape"));
+
+    private final String source;
+    private final List<AstNode> statements = new ArrayList<>();
+    private final Map<AstNode, Set<String>> declared = new HashMap<>();
+    private final Map<AstNode, Set<String>> mentioned = new HashMap<>();
+    private final Map<String, FunctionNode> modules = new LinkedHashMap<>();
+    private final Map<String, AstNode> moduleStatements = new HashMap<>();
+    private final Set<FunctionNode> moduleNodes = new HashSet<>();
+
+    public static class Result {
+        public final String code;
+        public final int keptStatements;
+        public final int totalStatements;
+        public final int keptModules;
+        public final int totalModules;
+
+        Result(String code, int keptStatements, int totalStatements, int keptModules, int totalModules) {
+            this.code = code;
+            this.keptStatements = keptStatements;
+            this.totalStatements = totalStatements;
+            this.keptModules = keptModules;
+            this.totalModules = totalModules;
+        }
+    }
+
+    private JsBundleSlicer(String source) {
+        this.source = source;
+        statements.addAll(parse(source));
+        for (AstNode statement : statements) {
+            findModules(statement);
+        }
+        for (AstNode statement : statements) {
+            declared.put(statement, declaredNames(statement));
+            mentioned.put(statement, references(statement, true));
+        }
+    }
+
+    private static List<AstNode> parse(String source) {
+        CompilerEnvirons environs = new CompilerEnvirons();
+        environs.setLanguageVersion(Context.VERSION_ES6);
+        environs.setRecordingComments(false);
+        environs.setReservedKeywordAsIdentifier(true);
+        AstRoot root = new Parser(environs).parse(source, "bundle", 1);
+        List<AstNode> statements = new ArrayList<>();
+        for (org.mozilla.javascript.Node child : root) {
+            statements.add((AstNode) child);
+        }
+        return statements;
+    }
+
+    /**
+     * @param bundle the code to cut down.
+     * @param glue   code kept as a whole, e.g. the processor's own entry function, its globals count as roots.
+     * @param roots  global names and webpack module ids needed besides those used by {@code glue}.
+     */
+    public static Result slice(String bundle, String glue, Collection<String> roots) {
+        JsBundleSlicer slicer = new JsBundleSlicer(bundle);
+        Set<String> needed = new HashSet<>(roots);
+        if (glue != null && !glue.trim().isEmpty()) {
+            // module ids in the glue, like req(123), are looked up in the bundle's module maps.
+            for (AstNode statement : parse(glue)) {
+                needed.addAll(slicer.references(statement, false));
+            }
+        }
+        return slicer.slice(needed);
+    }
+
+    private Result slice(Set<String> needed) {
+        Set<AstNode> kept = new HashSet<>();
+        Set<String> keptModules = new HashSet<>();
+        ArrayDeque<String> work = new ArrayDeque<>(needed);
+        Set<String> seen = new HashSet<>();
+        // fixed point over names and module ids, every newly kept node adds what it references.
+        while (!work.isEmpty()) {
+            String name = work.poll();
+            if (Ambient.contains(name) || !seen.add(name)) {
+                continue;
+            }
+            FunctionNode module = modules.get(name);
+            if (module != null && keptModules.add(name)) {
+                work.addAll(references(module.getBody(), false));
+                // the module map only works inside the statement holding it, the bootstrap or a chunk push.
+                AstNode holder = moduleStatements.get(name);
+                if (kept.add(holder)) {
+                    work.addAll(references(holder, false));
+                }
+            }
+            for (AstNode statement : statements) {
+                if (kept.contains(statement)) {
+                    continue;
+                }
+                boolean provides = declared.get(statement).isEmpty()
+                        ? mentioned.get(statement).contains(name)
+                        : declared.get(statement).contains(name);
+                if (provides) {
+                    kept.add(statement);
+                    work.addAll(references(statement, false));
+                }
+            }
+        }
+        StringBuilder code = new StringBuilder();
+        int keptCount = 0;
+        for (AstNode statement : statements) {
+            if (kept.contains(statement)) {
+                keptCount++;
+                code.append(text(statement, keptModules)).append('\n');
+            }
+        }
+        return new Result(code.toString(), keptCount, statements.size(), keptModules.size(), modules.size());
+    }
+
+    /**
+     * Source of a statement with the modules that are not needed replaced by 0.
+     */
+    private String text(AstNode statement, Set<String> keptModules) {
+        int start = statement.getAbsolutePosition();
+        int end = start + statement.getLength();
+        StringBuilder text = new StringBuilder();
+        int position = start;
+        List<Map.Entry<String, FunctionNode>> ordered = new ArrayList<>(modules.entrySet());
+        ordered.sort(Comparator.comparingInt(module -> module.getValue().getAbsolutePosition()));
+        for (Map.Entry<String, FunctionNode> module : ordered) {
+            FunctionNode node = module.getValue();
+            int moduleStart = node.getAbsolutePosition();
+            if (moduleStart < position || moduleStart >= end || keptModules.contains(module.getKey())) {
+                continue;
+            }
+            text.append(source, position, moduleStart).append('0');
+            position = moduleStart + node.getLength();
+        }
+        return text.append(source, position, end).toString();
+    }
+
+    private static String declaredName(AstNode target) {
+        if (target instanceof Name) {
+            return ((Name) target).getIdentifier();
+        }
+        if (target instanceof PropertyGet && isGlobalObject(((PropertyGet) target).getTarget())) {
+            return ((PropertyGet) target).getProperty().getIdentifier();
+        }
+        return null;
+    }
+
+    /**
+     * Globals a top level statement defines: functions, vars and plain assignments. Empty for anything else,
+     * such statements are matched by what they mention instead.
+     */
+    private static Set<String> declaredNames(AstNode statement) {
+        Set<String> names = new HashSet<>();
+        if (statement instanceof FunctionNode && ((FunctionNode) statement).getFunctionName() != null) {
+            names.add(((FunctionNode) statement).getFunctionName().getIdentifier());
+        } else if (statement instanceof VariableDeclaration) {
+            for (VariableInitializer variable : ((VariableDeclaration) statement).getVariables()) {
+                String name = declaredName(variable.getTarget());
+                if (name != null) {
+                    names.add(name);
+                }
+            }
+        } else if (statement instanceof ExpressionStatement) {
+            AstNode expression = ((ExpressionStatement) statement).getExpression();
+            // a = b = c, and a = 1, b = 2
+            ArrayDeque<AstNode> pending = new ArrayDeque<>();
+            pending.add(expression);
+            while (!pending.isEmpty()) {
+                AstNode node = pending.poll();
+                if (node instanceof Assignment) {
+                    String name = declaredName(((Assignment) node).getLeft());
+                    if (name == null) {
+                        return new HashSet<>();
+                    }
+                    names.add(name);
+                    if (((Assignment) node).getRight() instanceof Assignment) {
+                        pending.add(((Assignment) node).getRight());
+                    }
+                } else if (node instanceof InfixExpression && node.getType() == Token.COMMA) {
+                    pending.add(((InfixExpression) node).getLeft());
+                    pending.add(((InfixExpression) node).getRight());
+                } else {
+                    return new HashSet<>();
+                }
+            }
+        }
+        return names;
+    }
+
+    private static boolean isGlobalObject(AstNode node) {
+        return node instanceof Name && GlobalObjects.contains(((Name) node).getIdentifier())
+                || node instanceof KeywordLiteral && node.getType() == Token.THIS && node.getEnclosingFunction() == null;
+    }
+
+    /**
+     * Webpack module maps: an object of functions keyed by id, or an array of functions, passed to a call
+     * directly (the bootstrap) or inside an array (chunk files pushing [[chunk ids], modules]).
+     */
+    private void findModules(AstNode statement) {
+        statement.visit(node -> {
+            if (node instanceof FunctionCall) {
+                for (AstNode argument : ((FunctionCall) node).getArguments()) {
+                    addModuleMap(statement, argument);
+                    if (argument instanceof ArrayLiteral) {
+                        for (AstNode element : ((ArrayLiteral) argument).getElements()) {
+                            addModuleMap(statement, element);
+                        }
+                    }
+                }
+            }
+            return true;
+        });
+    }
+
+    private void addModuleMap(AstNode statement, AstNode node) {
+        Map<String, FunctionNode> found = new LinkedHashMap<>();
+        if (node instanceof ObjectLiteral) {
+            for (ObjectProperty property : ((ObjectLiteral) node).getElements()) {
+                String id = literal(property.getLeft());
+                if (id == null || !(property.getRight() instanceof FunctionNode)) {
+                    return;
+                }
+                found.put(id, (FunctionNode) property.getRight());
+            }
+        } else if (node instanceof ArrayLiteral) {
+            List<AstNode> elements = ((ArrayLiteral) node).getElements();
+            for (int i = 0; i < elements.size(); i++) {
+                AstNode element = elements.get(i);
+                if (element instanceof FunctionNode) {
+                    found.put(String.valueOf(i), (FunctionNode) element);
+                } else if (element.getType() != Token.EMPTY) {
+                    return;
+                }
+            }
+        }
+        if (found.size() >= 2) {
+            modules.putAll(found);
+            moduleNodes.addAll(found.values());
+            for (String id : found.keySet()) {
+                moduleStatements.put(id, statement);
+            }
+        }
+    }
+
+    private static String literal(AstNode node) {
+        if (node instanceof NumberLiteral) {
+            double value = ((NumberLiteral) node).getNumber();
+            return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+        }
+        if (node instanceof StringLiteral) {
+            return ((StringLiteral) node).getValue();
+        }
+        return null;
+    }
+
+    /**
+     * Globals used by a node plus the module ids it requires. Module bodies are skipped, they are only
+     * followed once their id is required. With {@code properties} every property name counts as well,
+     * used to match statements that set up a global without declaring it, like UMD wrappers.
+     */
+    private Set<String> references(AstNode node, boolean properties) {
+        Collector collector = new Collector(node, properties);
+        node.visit(collector);
+        return collector.names;
+    }
+
+    private static boolean isLocal(Name name) {
+        // the parser does not link a function's scope to its parent scope, so walk up the tree instead.
+        for (Scope scope = name.getEnclosingScope(); scope != null && !(scope instanceof AstRoot);
+             scope = scope.getParent() == null ? null : scope.getParent().getEnclosingScope()) {
+            Map<String, Symbol> symbols = scope.getSymbolTable();
+            if (symbols != null && symbols.containsKey(name.getIdentifier())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class Collector implements NodeVisitor {
+        final AstNode start;
+        final boolean properties;
+        final Set<String> names = new HashSet<>();
+
+        Collector(AstNode start, boolean properties) {
+            this.start = start;
+            this.properties = properties;
+        }
+
+        @Override
+        public boolean visit(AstNode child) {
+            if (child != start && child instanceof FunctionNode && moduleNodes.contains(child)) {
+                return false;
+            }
+            if (child instanceof Name) {
+                Name name = (Name) child;
+                if (!isLocal(name)) {
+                    names.add(name.getIdentifier());
+                }
+            } else if (child instanceof PropertyGet) {
+                PropertyGet get = (PropertyGet) child;
+                if (properties || isGlobalObject(get.getTarget())) {
+                    names.add(get.getProperty().getIdentifier());
+                }
+                get.getTarget().visit(this);
+                return false;
+            } else if (child instanceof ObjectProperty && ((ObjectProperty) child).getLeft() instanceof Name) {
+                // a plain key is no reference, only the value is.
+                ((ObjectProperty) child).getRight().visit(this);
+                return false;
+            } else if (child instanceof FunctionCall) {
+                // require(123), and the bootstrap's require(require.s = 123)
+                for (AstNode argument : ((FunctionCall) child).getArguments()) {
+                    String id = literal(argument instanceof Assignment ? ((Assignment) argument).getRight() : argument);
+                    if (id != null && modules.containsKey(id)) {
+                        names.add(id);
+                    }
+                }
+            }
+            return true;
+        }
+    }
+}
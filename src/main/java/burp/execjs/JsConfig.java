@@ -1,7 +1,69 @@
 package burp.execjs;
 
-public class JsConfig {
+import java.util.ArrayList;
+import java.util.List;
+
+public class JsConfig implements Cloneable {
     public String CryptoJsCode;
+    /**
+     * Optional path of a script file loaded ahead of CryptoJsCode and reloaded whenever it changes on disk.
+     */
+    public String ScriptFile = "";
     public String MethodName;
     public JsEngines JsEngine;
+    /**
+     * Rhino only: one scope loaded once and used by every Intruder thread at the same time. Everything the script
+     * set up while loading is sealed, library objects and closure variables included, and each call gets a global
+     * scope of its own on top of it, so globals a call assigns are only seen by that call. Scripts changing library
+     * state after loading (caches, counters, lazily set up modules) fail with "Cannot modify a property of a sealed
+     * object" and need this turned off.
+     */
+    public boolean SharedScope;
+    public boolean NativeCryptoJs;
+    public boolean WebCrypto;
+    public boolean ByteMode;
+    /**
+     * Bundled snippets (JsSnippets.Snippets keys) run before CryptoJsCode, Rhino runs their precompiled classes.
+     */
+    public List<String> Includes = new ArrayList<>();
+    /**
+     * Per payload limits, 0 means unlimited. The instruction budget only applies to Rhino.
+     */
+    public long InstructionBudget;
+    public long TimeoutMillis;
+    /**
+     * Rhino only: keep the script interpreted and collect per function and per line timings, see RhinoProfiler.
+     */
+    public boolean Profile;
+    /**
+     * HtmlUnit only: a page stripped down to running js, pending timers are run right after each call, see HtmlUnitEngine.
+     */
+    public boolean LiteHtmlUnit;
+    /**
+     * Optional lifecycle functions, empty means none. InitMethodName runs once for every instance of the loaded
+     * script (scope, ScriptEngine or page) with InitParams parsed as JSON, DisposeMethodName when it is dropped.
+     */
+    public String InitMethodName = "";
+    public String InitParams = "";
+    public String DisposeMethodName = "";
+    /**
+     * Run the script in this many child JVMs instead of Burp's own, 0 runs it in process. Every worker gets
+     * WorkerHeapMb of heap and is replaced by a fresh one after WorkerRecycleCalls calls or once its used heap
+     * passes WorkerRecycleHeapMb, 0 means never.
+     */
+    public int Workers;
+    public int WorkerHeapMb = 256;
+    public long WorkerRecycleCalls;
+    public long WorkerRecycleHeapMb;
+
+    /**
+     * A shallow copy, e.g. to reload a script file under otherwise unchanged settings.
+     */
+    public JsConfig copy() {
+        try {
+            return (JsConfig) super.clone();
+        } catch (CloneNotSupportedException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
 }
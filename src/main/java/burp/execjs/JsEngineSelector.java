@@ -0,0 +1,168 @@
+package burp.execjs;
+
+import burp.BurpExtender;
+import burp.execjs.engine.RhinoEngine;
+import burp.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks the engine of a JsEngines.Auto processor. The script is loaded in every engine and run on sample payloads,
+ * the fastest engine giving the same results as the reference wins. HtmlUnit is the reference when it can run
+ * the script, being the closest to a browser. Scripts giving different results from one run to the next get the
+ * reference engine. Engines are loaded through the JsRuntimeRegistry, so the winner
+ * is the very engine the processor gets once it is added.
+ */
+public class JsEngineSelector {
+    private static final JsEngines[] Candidates = {JsEngines.HtmlUnit, JsEngines.Rhino, JsEngines.JreBuiltIn};
+    private static final String[] Samples = {"", "a", "123456", "admin", "P@ssw0rd!", "中文测试 ünïcødé",
+            "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789abcdefghijklmnopqrstuvwxyz{}[]<>&=?"};
+    private static final long WarmupMillis = 500;
+    private static final long MeasureMillis = 1000;
+    private static final long CompileWaitMillis = 10000;
+
+    public static class Candidate {
+        public final JsEngines engine;
+        public String error;
+        public boolean matches;
+        public double opsPerSecond;
+        IJsEngine instance;
+        String runtimeKey;
+        List<String> outputs;
+
+        Candidate(JsEngines engine) {
+            this.engine = engine;
+        }
+    }
+
+    /**
+     * Holds every engine that loaded until closed, close it once the processor has acquired the chosen one.
+     */
+    public static class Selection implements AutoCloseable {
+        public final List<Candidate> candidates = new ArrayList<>();
+        public Candidate chosen;
+        public Candidate reference;
+        public boolean deterministic = true;
+
+        public String describe() {
+            StringBuilder text = new StringBuilder();
+            for (Candidate candidate : candidates) {
+                text.append(candidate.engine.name()).append(": ");
+                if (candidate.error != null) {
+                    text.append("unavailable, ").append(candidate.error);
+                } else {
+                    text.append(String.format("%.0f ops/sec", candidate.opsPerSecond));
+                    if (candidate == reference) {
+                        text.append(", reference");
+                    } else if (deterministic) {
+                        text.append(candidate.matches ? ", same results" : ", different results");
+                    }
+                }
+                text.append("\n");
+            }
+            if (!deterministic) {
+                text.append("The script gives different results for the same input, so results could not be compared " +
+                        "and the reference engine is used.\n");
+            }
+            text.append(chosen == null ? "No engine can run this script." :
+                    String.format("Chosen: %s, %.0f ops/sec.", chosen.engine.name(), chosen.opsPerSecond));
+            return text.toString();
+        }
+
+        @Override
+        public void close() {
+            for (Candidate candidate : candidates) {
+                if (candidate.runtimeKey != null) {
+                    JsRuntimeRegistry.release(candidate.runtimeKey);
+                    candidate.runtimeKey = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Load, compare and measure every engine, this takes a few seconds per engine so keep it off the EDT.
+     */
+    public static Selection select(JsConfig config, BurpExtender parent) {
+        Selection selection = new Selection();
+        for (JsEngines engine : Candidates) {
+            Candidate candidate = new Candidate(engine);
+            selection.candidates.add(candidate);
+            if (engine == JsEngines.HtmlUnit && config.ByteMode) {
+                candidate.error = "no byte mode.";
+                continue;
+            }
+            try {
+                JsConfig candidateConfig = config.copy();
+                candidateConfig.JsEngine = engine;
+                candidateConfig = ExecJSIntruderPayloadProcessor.effectiveConfig(candidateConfig);
+                candidate.instance = JsRuntimeRegistry.acquire(candidateConfig, parent);
+                candidate.runtimeKey = JsRuntimeRegistry.key(candidateConfig);
+                candidate.outputs = run(candidate.instance, config);
+                if (selection.reference == null) {
+                    selection.reference = candidate;
+                    selection.deterministic = run(candidate.instance, config).equals(candidate.outputs);
+                }
+                candidate.matches = candidate.outputs.equals(selection.reference.outputs);
+                if (candidate.instance instanceof RhinoEngine) {
+                    // measure the compiled runtime Intruder is going to use, not the interpreter it starts with.
+                    ((RhinoEngine) candidate.instance).awaitCompiled(CompileWaitMillis);
+                }
+                candidate.opsPerSecond = measure(candidate.instance, config);
+            } catch (Throwable ex) {
+                candidate.error = ex.getMessage() != null ? ex.getMessage() : ex.toString();
+                candidate.instance = null;
+            }
+        }
+        if (!selection.deterministic) {
+            // no other engine can be checked against a script that is random or time based.
+            selection.chosen = selection.reference.error == null ? selection.reference : null;
+            return selection;
+        }
+        for (Candidate candidate : selection.candidates) {
+            if (candidate.error == null && candidate.matches &&
+                    (selection.chosen == null || candidate.opsPerSecond > selection.chosen.opsPerSecond)) {
+                selection.chosen = candidate;
+            }
+        }
+        return selection;
+    }
+
+    private static List<String> run(IJsEngine engine, JsConfig config) throws Exception {
+        ArrayList<String> outputs = new ArrayList<>(Samples.length);
+        for (String sample : Samples) {
+            outputs.add(call(engine, config, sample));
+        }
+        return outputs;
+    }
+
+    private static String call(IJsEngine engine, JsConfig config, String sample) throws Exception {
+        if (config.ByteMode) {
+            return Utils.hex(engine.evalBytes(config.MethodName, sample.getBytes(StandardCharsets.UTF_8)));
+        }
+        return engine.eval(config.MethodName, sample);
+    }
+
+    /**
+     * Calls per second over the sample payloads, after a warm-up so the JIT has seen the code.
+     */
+    private static double measure(IJsEngine engine, JsConfig config) throws Exception {
+        long warmupEnd = System.nanoTime() + WarmupMillis * 1000000;
+        int index = 0;
+        while (System.nanoTime() < warmupEnd) {
+            call(engine, config, Samples[index++ % Samples.length]);
+        }
+        long calls = 0;
+        long started = System.nanoTime();
+        long measureEnd = started + MeasureMillis * 1000000;
+        long now;
+        do {
+            call(engine, config, Samples[index++ % Samples.length]);
+            calls++;
+            now = System.nanoTime();
+        } while (now < measureEnd);
+        return calls * 1e9 / (now - started);
+    }
+}
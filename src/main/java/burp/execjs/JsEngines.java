@@ -3,5 +3,9 @@ package burp.execjs;
 public enum JsEngines {
     Rhino,
     JreBuiltIn,
-    HtmlUnit
+    HtmlUnit,
+    /**
+     * Chosen when the processor is added, see JsEngineSelector.
+     */
+    Auto
 }
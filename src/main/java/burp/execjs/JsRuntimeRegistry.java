@@ -0,0 +1,118 @@
+package burp.execjs;
+
+import burp.BurpExtender;
+import burp.execjs.engine.HtmlUnitEngine;
+import burp.execjs.engine.JreBuiltInEngine;
+import burp.execjs.engine.RhinoEngine;
+import burp.execjs.engine.WorkerEngine;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Engines shared between Exec JS processors. Processors loading the same script with the same options get the
+ * same engine and only differ in the function they call, the engine is closed when the last of them is removed.
+ * Engines load outside of the registry's lock, a slow load only holds up the processors waiting for that same engine.
+ */
+public class JsRuntimeRegistry {
+    private static final HashMap<String, Entry> runtimes = new HashMap<>();
+
+    private static class Entry {
+        // completed once the first processor asking for it has loaded it.
+        final CompletableFuture<IJsEngine> engine = new CompletableFuture<>();
+        int references;
+    }
+
+    /**
+     * Everything in the config that changes what the engine loads or how it runs, i.e. all but MethodName.
+     */
+    public static String key(JsConfig config) {
+        return DigestUtils.sha256Hex(config.JsEngine + "\n" + config.SharedScope + "\n" + config.NativeCryptoJs + "\n" +
+                config.WebCrypto + "\n" + config.ByteMode + "\n" + config.InstructionBudget + "\n" + config.TimeoutMillis + "\n" + config.Profile + "\n" + config.LiteHtmlUnit + "\n" +
+                String.join(",", config.Includes) + "\n" + config.InitMethodName + "\n" + config.InitParams + "\n" +
+                config.DisposeMethodName + "\n" + config.Workers + "\n" + config.WorkerHeapMb + "\n" + config.WorkerRecycleCalls + "\n" +
+                config.WorkerRecycleHeapMb + "\n" + config.CryptoJsCode);
+    }
+
+    /**
+     * The engine for this config, loading it when no processor uses it yet. Every successful call must be
+     * paired with a {@link #release(String)} of the same key.
+     */
+    public static IJsEngine acquire(JsConfig config, BurpExtender parent) throws Exception {
+        String key = key(config);
+        Entry entry;
+        boolean load = false;
+        synchronized (runtimes) {
+            entry = runtimes.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                runtimes.put(key, entry);
+                load = true;
+            }
+            entry.references++;
+        }
+        if (load) {
+            IJsEngine engine = create(config);
+            engine.setParent(parent);
+            try {
+                engine.setConfig(config);
+            } catch (Throwable ex) {
+                engine.close();
+                // processors asking again later get a fresh attempt, the ones waiting now get this error.
+                synchronized (runtimes) {
+                    runtimes.remove(key, entry);
+                }
+                entry.engine.completeExceptionally(ex);
+                throw ex;
+            }
+            entry.engine.complete(engine);
+            return engine;
+        }
+        try {
+            return entry.engine.get();
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+        }
+    }
+
+    public static void release(String key) {
+        Entry entry;
+        synchronized (runtimes) {
+            entry = runtimes.get(key);
+            if (entry == null || --entry.references > 0) {
+                return;
+            }
+            runtimes.remove(key);
+        }
+        entry.engine.thenAccept(IJsEngine::close);
+    }
+
+    /**
+     * @return how many processors use the engine of this key.
+     */
+    public static int references(String key) {
+        synchronized (runtimes) {
+            Entry entry = runtimes.get(key);
+            return entry == null ? 0 : entry.references;
+        }
+    }
+
+    /**
+     * A new, not yet configured engine for {@code config}, js worker processes build theirs with it as well.
+     */
+    public static IJsEngine create(JsConfig config) {
+        if (config.Workers > 0) {
+            return new WorkerEngine();
+        }
+        switch (config.JsEngine) {
+            case HtmlUnit:
+                return new HtmlUnitEngine();
+            case JreBuiltIn:
+                return new JreBuiltInEngine();
+            default:
+                return new RhinoEngine();
+        }
+    }
+}
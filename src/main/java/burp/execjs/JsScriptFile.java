@@ -0,0 +1,154 @@
+package burp.execjs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scripts referenced by path instead of being pasted into the editor, plus a watcher telling processors
+ * when their file changed. One watcher thread serves every processor, changes are debounced since
+ * editors and bundlers write a file in several steps.
+ */
+public class JsScriptFile {
+    // bigger files are mapped instead of copied into a heap buffer before decoding.
+    private static final long MapThreshold = 1024 * 1024;
+    private static final long DebounceMillis = 300;
+
+    private static final Map<Path, List<Runnable>> listeners = new HashMap<>();
+    private static final Map<Path, WatchKey> directories = new HashMap<>();
+    private static final Map<Path, ScheduledFuture<?>> pending = new HashMap<>();
+    private static WatchService watcher;
+    private static ScheduledExecutorService scheduler;
+
+    /**
+     * The file decoded as UTF-8, a leading byte order mark is dropped.
+     */
+    public static String read(Path file) throws IOException {
+        CharBuffer chars;
+        long size = Files.size(file);
+        if (size < MapThreshold) {
+            chars = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(Files.readAllBytes(file)));
+        } else {
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("script file " + file + " is too large.");
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                chars = StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                        .decode(mapped);
+            }
+        }
+        if (chars.length() > 0 && chars.charAt(0) == '\uFEFF') {
+            chars.position(1);
+        }
+        return chars.toString();
+    }
+
+    /**
+     * Call {@code onChange} from the watcher thread whenever {@code file} has been written.
+     *
+     * @return closing it stops the notifications.
+     */
+    public static synchronized Closeable watch(Path file, Runnable onChange) throws IOException {
+        Path target = file.toAbsolutePath().normalize();
+        Path directory = target.getParent();
+        if (watcher == null) {
+            watcher = FileSystems.getDefault().newWatchService();
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "BurpCrypto-ScriptWatcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            Thread thread = new Thread(JsScriptFile::poll, "BurpCrypto-ScriptWatcher-Poll");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        if (!directories.containsKey(directory)) {
+            directories.put(directory, directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY));
+        }
+        listeners.computeIfAbsent(target, key -> new CopyOnWriteArrayList<>()).add(onChange);
+        return () -> unwatch(target, onChange);
+    }
+
+    private static synchronized void unwatch(Path target, Runnable onChange) {
+        List<Runnable> callbacks = listeners.get(target);
+        if (callbacks == null) {
+            return;
+        }
+        callbacks.remove(onChange);
+        if (callbacks.isEmpty()) {
+            listeners.remove(target);
+        }
+        Path directory = target.getParent();
+        if (listeners.keySet().stream().noneMatch(path -> path.getParent().equals(directory))) {
+            WatchKey key = directories.remove(directory);
+            if (key != null) {
+                key.cancel();
+            }
+        }
+    }
+
+    private static void poll() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        continue;
+                    }
+                    changed(directory.resolve((Path) event.context()));
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // nothing to watch with any more.
+        }
+    }
+
+    private static synchronized void changed(Path target) {
+        if (!listeners.containsKey(target)) {
+            return;
+        }
+        ScheduledFuture<?> previous = pending.get(target);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        pending.put(target, scheduler.schedule(() -> {
+            List<Runnable> callbacks;
+            synchronized (JsScriptFile.class) {
+                pending.remove(target);
+                callbacks = listeners.get(target);
+            }
+            if (callbacks != null) {
+                for (Runnable callback : callbacks) {
+                    callback.run();
+                }
+            }
+        }, DebounceMillis, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,165 @@
+package burp.execjs;
+
+import burp.utils.HttpUtils;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * On-disk copy of the online snippet library, kept next to BurpCrypto.ldb.
+ * Reads only touch the disk (or the bundled fallback), the network is used from a background thread
+ * with conditional requests, so an unchanged library costs one 304 per Burp session.
+ */
+public class JsSnippetCache {
+    private static final String PackageRootURL = "https://cdn.jsdelivr.net/gh/whwlsfb/BurpCrypto-JsLibrary/";
+    private static final String PackageList = "packages.yaml";
+    private static final String BundledRoot = "/burp/execjs/bundled/snippets/";
+    private static final Path CacheRoot = new File("BurpCrypto.snippets").toPath().toAbsolutePath().normalize();
+    private static final AtomicBoolean refreshed = new AtomicBoolean();
+
+    /**
+     * The cached package index, or the bundled one before the first successful download.
+     * Starts a background revalidation the first time it is called.
+     */
+    public static JsSnippet[] GetSnippetList() {
+        refreshInBackground();
+        byte[] index = read(PackageList);
+        return index == null ? new JsSnippet[0] : new Yaml().loadAs(new String(index, StandardCharsets.UTF_8), JsSnippet[].class);
+    }
+
+    /**
+     * Source of every file of a snippet, downloading the ones that are not cached yet. Blocks on the network, keep it off the EDT.
+     */
+    public static String GetSnippetCode(JsSnippet snippet) throws IOException {
+        StringBuilder code = new StringBuilder();
+        for (String path : snippet.path) {
+            byte[] body = read(path);
+            if (body == null) {
+                if (!download(path)) {
+                    throw new IOException("snippet file " + path + " is not cached and could not be downloaded.");
+                }
+                body = read(path);
+            }
+            code.append(new String(body, StandardCharsets.UTF_8)).append("\r\n");
+        }
+        return code.toString();
+    }
+
+    /**
+     * A file of the library, from the cache or else from the bundled fallback.
+     */
+    public static byte[] read(String path) {
+        try {
+            Path cached = resolve(path);
+            if (Files.isRegularFile(cached)) {
+                return Files.readAllBytes(cached);
+            }
+        } catch (IOException ex) {
+            // a damaged cache entry falls back to the bundled copy.
+        }
+        try (InputStream in = JsSnippetCache.class.getResourceAsStream(BundledRoot + path)) {
+            if (in == null) {
+                return null;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private static void refreshInBackground() {
+        if (!refreshed.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            if (!download(PackageList)) {
+                return;
+            }
+            // refresh the bodies too, so snippets work offline once the index has been seen online.
+            for (JsSnippet snippet : GetSnippetList()) {
+                if (snippet.path != null) {
+                    for (String path : snippet.path) {
+                        download(path);
+                    }
+                }
+            }
+        }, "BurpCrypto-SnippetCache");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Conditional GET of one library file into the cache.
+     *
+     * @return true when the cached copy is current.
+     */
+    private static synchronized boolean download(String path) {
+        try {
+            Path target = resolve(path);
+            Path metaFile = target.resolveSibling(target.getFileName() + ".meta");
+            Properties meta = new Properties();
+            Request.Builder request = new Request.Builder().url(PackageRootURL + path);
+            if (Files.isRegularFile(target) && Files.isRegularFile(metaFile)) {
+                try (InputStream in = Files.newInputStream(metaFile)) {
+                    meta.load(in);
+                }
+                if (meta.getProperty("ETag") != null) {
+                    request.header("If-None-Match", meta.getProperty("ETag"));
+                }
+                if (meta.getProperty("Last-Modified") != null) {
+                    request.header("If-Modified-Since", meta.getProperty("Last-Modified"));
+                }
+            }
+            try (Response response = HttpUtils.client.newCall(request.build()).execute()) {
+                if (response.code() == 304) {
+                    return true;
+                }
+                if (!response.isSuccessful()) {
+                    return false;
+                }
+                Files.createDirectories(target.getParent());
+                Path temp = Files.createTempFile(target.getParent(), "download", ".tmp");
+                Files.write(temp, response.body().bytes());
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                meta.clear();
+                for (String header : new String[]{"ETag", "Last-Modified"}) {
+                    if (response.header(header) != null) {
+                        meta.setProperty(header, response.header(header));
+                    }
+                }
+                try (OutputStream out = Files.newOutputStream(metaFile)) {
+                    meta.store(out, path);
+                }
+                return true;
+            }
+        } catch (IOException | RuntimeException ex) {
+            return false;
+        }
+    }
+
+    private static Path resolve(String path) throws IOException {
+        Path resolved = CacheRoot.resolve(path).normalize();
+        if (!resolved.startsWith(CacheRoot)) {
+            throw new IOException("snippet path " + path + " leaves the cache directory.");
+        }
+        return resolved;
+    }
+}
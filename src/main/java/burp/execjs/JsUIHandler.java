@@ -1,6 +1,8 @@
 package burp.execjs;
 
 import burp.BurpExtender;
+import burp.IIntruderPayloadProcessor;
+import burp.execjs.engine.RhinoProfiler;
 import burp.utils.KeyFormat;
 import burp.utils.UIUtil;
 import org.fife.rsta.ac.LanguageSupportFactory;
@@ -15,25 +17,51 @@ import org.fife.ui.rtextarea.RTextScrollPane;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ItemEvent;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
 import java.lang.management.ManagementFactory;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 
 public class JsUIHandler {
     private BurpExtender parent;
     private JPanel mainPanel;
     private JTextField methodText;
+    private JTextField budgetText;
+    private JTextField timeoutText;
+    private JTextField workersText;
+    private JTextField workerHeapText;
+    private JTextField recycleCallsText;
+    private JTextField recycleHeapText;
     private JPanel codePanel;
     private JTextArea jsCodeText;
     private JScrollPane codePane;
     private JComboBox<String> jsEngineSelector;
-    private JButton applyBtn, deleteBtn, includeLibBtn;
+    private static final int PrecomputeBatchSize = 1000;
+    private JButton applyBtn, deleteBtn, includeLibBtn, sliceBundleBtn, precomputeBtn, profilerBtn;
     private JCheckBox useSyntaxEditor;
+    private JCheckBox sharedScopeCheck;
+    private JCheckBox nativeCryptoJsCheck;
+    private JCheckBox webCryptoCheck;
+    private JCheckBox byteModeCheck;
+    private JCheckBox profileCheck;
+    private JCheckBox liteHtmlUnitCheck;
+    private JTextField initMethodText;
+    private JTextField scriptFileText;
+    private JTextField initParamsText;
+    private JTextField disposeMethodText;
     private HashMap<String, String> includes = new HashMap<>();
+    private LinkedHashSet<String> bundledIncludes = new LinkedHashSet<>();
 
     public JsUIHandler(BurpExtender parent) {
         this.parent = parent;
@@ -53,7 +81,11 @@ public class JsUIHandler {
         final JPanel panel1 = UIUtil.GetXJPanel();
         final JPanel panel2 = UIUtil.GetXJPanel();
         codePanel = UIUtil.GetXJPanel();
+        final JPanel panel3 = UIUtil.GetXJPanel();
         final JPanel panel4 = UIUtil.GetXJPanel();
+        final JPanel panel5 = UIUtil.GetXJPanel();
+        final JPanel panel6 = UIUtil.GetXJPanel();
+        final JPanel panel7 = UIUtil.GetXJPanel();
 
         final JLabel label2 = new JLabel("Js Method Name: ");
         methodText = new JTextField(200);
@@ -64,6 +96,59 @@ public class JsUIHandler {
         jsEngineSelector.setMaximumSize(jsEngineSelector.getPreferredSize());
         jsEngineSelector.setSelectedIndex(0);
 
+        sharedScopeCheck = new JCheckBox("Shared sealed scope(Rhino only, loaded state is read-only)");
+        sharedScopeCheck.setToolTipText("<html>One scope used by all Intruder threads at once. Everything loaded is sealed, library objects<br>" +
+                "and closure variables included, each call gets its own globals on top of it. Scripts changing<br>" +
+                "library state after loading (caches, counters, lazily initialised modules) fail and need this off.</html>");
+        nativeCryptoJsCheck = new JCheckBox("Native CryptoJS(Rhino/JreBuiltIn)");
+        webCryptoCheck = new JCheckBox("WebCrypto crypto.subtle(Rhino/JreBuiltIn)");
+        byteModeCheck = new JCheckBox("Byte mode, payload passed as Uint8Array(Rhino/JreBuiltIn)");
+        profileCheck = new JCheckBox("Profile(Rhino only, runs interpreted and much slower)");
+        liteHtmlUnitCheck = new JCheckBox("Lite page, timers run right after each call(HtmlUnit only)");
+
+        final JLabel label5 = new JLabel("Instruction budget per payload(Rhino only, 0 = unlimited): ");
+        budgetText = new JTextField("0", 12);
+        budgetText.setMaximumSize(budgetText.getPreferredSize());
+        final JLabel label6 = new JLabel("Timeout per payload ms(0 = unlimited): ");
+        timeoutText = new JTextField("0", 8);
+        timeoutText.setMaximumSize(timeoutText.getPreferredSize());
+
+        final JLabel label11 = new JLabel("Worker processes(0 = run inside Burp): ");
+        workersText = new JTextField("0", 4);
+        workersText.setMaximumSize(workersText.getPreferredSize());
+        final JLabel label12 = new JLabel("Heap MB per worker: ");
+        workerHeapText = new JTextField("256", 6);
+        workerHeapText.setMaximumSize(workerHeapText.getPreferredSize());
+        final JLabel label13 = new JLabel("Recycle after calls(0 = never): ");
+        recycleCallsText = new JTextField("0", 10);
+        recycleCallsText.setMaximumSize(recycleCallsText.getPreferredSize());
+        final JLabel label14 = new JLabel("Recycle above heap MB(0 = never): ");
+        recycleHeapText = new JTextField("0", 6);
+        recycleHeapText.setMaximumSize(recycleHeapText.getPreferredSize());
+
+        final JLabel label7 = new JLabel("Init Method Name(optional, run once per engine instance): ");
+        initMethodText = new JTextField(20);
+        initMethodText.setMaximumSize(initMethodText.getPreferredSize());
+        final JLabel label8 = new JLabel("Init Params(JSON): ");
+        initParamsText = new JTextField(40);
+        initParamsText.setMaximumSize(initParamsText.getPreferredSize());
+        final JLabel label9 = new JLabel("Dispose Method Name(optional): ");
+        disposeMethodText = new JTextField(20);
+        disposeMethodText.setMaximumSize(disposeMethodText.getPreferredSize());
+
+        final JLabel label10 = new JLabel("Script File(optional, runs before the code below, reloaded when it changes): ");
+        scriptFileText = new JTextField(60);
+        scriptFileText.setMaximumSize(scriptFileText.getPreferredSize());
+        final JButton browseBtn = new JButton("Browse...");
+        browseBtn.setMaximumSize(browseBtn.getPreferredSize());
+        browseBtn.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("Script File");
+            if (chooser.showOpenDialog(mainPanel) == JFileChooser.APPROVE_OPTION) {
+                scriptFileText.setText(chooser.getSelectedFile().getAbsolutePath());
+            }
+        });
+
         final JLabel label3 = new JLabel("Js Code: ");
         useSyntaxEditor = new JCheckBox("Use Syntax highlight Editor(Experiment)");
         if (canUseCodeEditor()) {
@@ -87,17 +172,71 @@ public class JsUIHandler {
             JsEngines jsEngine = JsEngines.valueOf(jsEngineSelector.getSelectedItem().toString());
             JsConfig config = new JsConfig();
             config.JsEngine = jsEngine;
+            config.SharedScope = sharedScopeCheck.isSelected();
+            config.NativeCryptoJs = nativeCryptoJsCheck.isSelected();
+            config.WebCrypto = webCryptoCheck.isSelected();
+            config.ByteMode = byteModeCheck.isSelected();
+            config.Profile = profileCheck.isSelected();
+            config.LiteHtmlUnit = liteHtmlUnitCheck.isSelected();
+            if (config.ByteMode && jsEngine == JsEngines.HtmlUnit) {
+                JOptionPane.showMessageDialog(mainPanel, "byte mode is not supported by HtmlUnit!");
+                return;
+            }
+            try {
+                config.InstructionBudget = Long.parseLong(budgetText.getText().trim());
+                config.TimeoutMillis = Long.parseLong(timeoutText.getText().trim());
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(mainPanel, "budget and timeout must be numbers!");
+                return;
+            }
+            try {
+                config.Workers = Integer.parseInt(workersText.getText().trim());
+                config.WorkerHeapMb = Integer.parseInt(workerHeapText.getText().trim());
+                config.WorkerRecycleCalls = Long.parseLong(recycleCallsText.getText().trim());
+                config.WorkerRecycleHeapMb = Long.parseLong(recycleHeapText.getText().trim());
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(mainPanel, "worker settings must be numbers!");
+                return;
+            }
+            if (config.Workers > 0 && config.WorkerHeapMb < 16) {
+                JOptionPane.showMessageDialog(mainPanel, "workers need at least 16 MB of heap!");
+                return;
+            }
+            if (jsEngine == JsEngines.Auto && config.Profile) {
+                JOptionPane.showMessageDialog(mainPanel, "pick Rhino to profile, Auto measures the compiled engines!");
+                return;
+            }
+            if (config.Workers > 0 && config.Profile) {
+                JOptionPane.showMessageDialog(mainPanel, "profiling is not available in worker processes!");
+                return;
+            }
+            config.Includes = new ArrayList<>(bundledIncludes);
+            config.InitMethodName = initMethodText.getText().trim();
+            config.InitParams = initParamsText.getText().trim();
+            config.DisposeMethodName = disposeMethodText.getText().trim();
             config.CryptoJsCode = "";
             for (Map.Entry<String, String> snippet : includes.entrySet()) {
                 config.CryptoJsCode += snippet.getValue() + "\r\n";
             }
             config.CryptoJsCode += jsCodeText.getText();
+            config.ScriptFile = scriptFileText.getText().trim();
+            if (!config.ScriptFile.isEmpty() && !new File(config.ScriptFile).isFile()) {
+                JOptionPane.showMessageDialog(mainPanel, "script file not found!");
+                return;
+            }
             config.MethodName = methodText.getText();
             String extName = JOptionPane.showInputDialog("Please give this processor a special name:");
             if (extName.length() == 0) {
                 JOptionPane.showMessageDialog(mainPanel, "name empty!");
                 return;
             }
+            if (!parent.CheckIPProcessorName(extName)) {
+                return;
+            }
+            if (jsEngine == JsEngines.Auto) {
+                selectEngine(extName, config);
+                return;
+            }
             if (parent.RegIPProcessor(extName, new ExecJSIntruderPayloadProcessor(parent, extName, config)))
                 JOptionPane.showMessageDialog(mainPanel, "Apply processor success!");
         });
@@ -116,33 +255,311 @@ public class JsUIHandler {
             JOptionPane.showMessageDialog(mainPanel, "Remove success!");
         });
 
-        includeLibBtn = new JButton("Include(Test)...");
+        precomputeBtn = new JButton("Precompute wordlist...");
+        precomputeBtn.setMaximumSize(precomputeBtn.getPreferredSize());
+        precomputeBtn.addActionListener(e -> {
+            String extName = JOptionPane.showInputDialog("Please enter the special name of the processor to run:");
+            if (extName == null) return;
+            IIntruderPayloadProcessor processor = parent.IPProcessors.get(extName);
+            if (!(processor instanceof ExecJSIntruderPayloadProcessor)) {
+                JOptionPane.showMessageDialog(mainPanel, "Exec Js processor not found!");
+                return;
+            }
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("Wordlist");
+            if (chooser.showOpenDialog(mainPanel) != JFileChooser.APPROVE_OPTION) return;
+            File input = chooser.getSelectedFile();
+            chooser.setDialogTitle("Save results to");
+            chooser.setSelectedFile(new File(input.getPath() + ".enc"));
+            if (chooser.showSaveDialog(mainPanel) != JFileChooser.APPROVE_OPTION) return;
+            File output = chooser.getSelectedFile();
+            new Thread(() -> precompute((ExecJSIntruderPayloadProcessor) processor, input, output), "BurpCrypto-Precompute").start();
+        });
+
+        profilerBtn = new JButton("Profiler...");
+        profilerBtn.setMaximumSize(profilerBtn.getPreferredSize());
+        profilerBtn.addActionListener(e -> {
+            String extName = JOptionPane.showInputDialog("Please enter the special name of the processor to inspect:");
+            if (extName == null) return;
+            IIntruderPayloadProcessor processor = parent.IPProcessors.get(extName);
+            RhinoProfiler profiler = processor instanceof ExecJSIntruderPayloadProcessor ? ((ExecJSIntruderPayloadProcessor) processor).getProfiler() : null;
+            if (profiler == null) {
+                JOptionPane.showMessageDialog(mainPanel, "no profiled Rhino processor with this name!");
+                return;
+            }
+            showProfiler(extName, profiler);
+        });
+
+        includeLibBtn = new JButton("Include Library...");
         includeLibBtn.setMaximumSize(includeLibBtn.getPreferredSize());
         includeLibBtn.addActionListener(e -> {
-            JsSnippet[] snippet = JsSnippets.GetSnippetList();
-            JOptionPane.showMessageDialog(mainPanel, snippet[0].name);
+            JsSnippet[] snippets = JsSnippets.GetSnippetList();
+            if (snippets.length == 0) {
+                JOptionPane.showMessageDialog(mainPanel, "snippet library unavailable!");
+                return;
+            }
+            String[] names = new String[snippets.length];
+            for (int i = 0; i < snippets.length; i++) {
+                names[i] = snippets[i].name + (snippets[i].description != null ? " - " + snippets[i].description : "");
+            }
+            Object selected = JOptionPane.showInputDialog(mainPanel, "Select a library to include:", "Include Library",
+                    JOptionPane.PLAIN_MESSAGE, null, names, names[0]);
+            if (selected == null) return;
+            JsSnippet snippet = snippets[Arrays.asList(names).indexOf(selected)];
+            // bodies that are not cached yet come from the network, so load them off the EDT.
+            new Thread(() -> {
+                try {
+                    String code = JsSnippetCache.GetSnippetCode(snippet);
+                    SwingUtilities.invokeLater(() -> {
+                        includes.put(snippet.name, code);
+                        jsCodeText.append(GetSnippetHelp(snippet) + "\r\n\r\n");
+                    });
+                } catch (Exception ex) {
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(mainPanel, ex.getMessage()));
+                }
+            }, "BurpCrypto-SnippetInclude").start();
         });
 
+        sliceBundleBtn = new JButton("Slice Bundle...");
+        sliceBundleBtn.setMaximumSize(sliceBundleBtn.getPreferredSize());
+        sliceBundleBtn.addActionListener(e -> sliceBundle());
 
         panel4.add(label3);
         panel4.add(useSyntaxEditor);
         panel4.add(includeLibBtn);
+        panel4.add(sliceBundleBtn);
+        panel6.add(label10);
+        panel6.add(scriptFileText);
+        panel6.add(browseBtn);
         panel1.add(label2);
         panel1.add(methodText);
         panel1.add(label4);
         panel1.add(jsEngineSelector);
+        panel1.add(sharedScopeCheck);
+        panel1.add(nativeCryptoJsCheck);
+        panel1.add(webCryptoCheck);
+        panel1.add(byteModeCheck);
+        panel1.add(profileCheck);
+        panel1.add(liteHtmlUnitCheck);
+        panel3.add(label5);
+        panel3.add(budgetText);
+        panel3.add(label6);
+        panel3.add(timeoutText);
+        panel7.add(label11);
+        panel7.add(workersText);
+        panel7.add(label12);
+        panel7.add(workerHeapText);
+        panel7.add(label13);
+        panel7.add(recycleCallsText);
+        panel7.add(label14);
+        panel7.add(recycleHeapText);
+        panel5.add(label7);
+        panel5.add(initMethodText);
+        panel5.add(label8);
+        panel5.add(initParamsText);
+        panel5.add(label9);
+        panel5.add(disposeMethodText);
         panel2.add(applyBtn);
         panel2.add(deleteBtn);
+        panel2.add(precomputeBtn);
+        panel2.add(profilerBtn);
 
         mainPanel.add(label1);
+        mainPanel.add(panel6);
         mainPanel.add(panel4);
         mainPanel.add(codePanel);
         mainPanel.add(panel1);
+        mainPanel.add(panel3);
+        mainPanel.add(panel5);
+        mainPanel.add(panel7);
         mainPanel.add(panel2);
 
         return mainPanel;
     }
 
+    /**
+     * Try the script in every engine off the EDT, then add the processor bound to the fastest one giving the same results.
+     */
+    private void selectEngine(String extName, JsConfig config) {
+        applyBtn.setEnabled(false);
+        new Thread(() -> {
+            JsEngineSelector.Selection selection = JsEngineSelector.select(config, parent);
+            SwingUtilities.invokeLater(() -> {
+                try {
+                    String summary = selection.describe();
+                    parent.stdout.println("engine selection for " + extName + ":\n" + summary);
+                    if (selection.chosen == null) {
+                        JOptionPane.showMessageDialog(mainPanel, summary, "Engine Selection", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    config.JsEngine = selection.chosen.engine;
+                    // registered while the selection still holds the engines, so the processor gets the measured one.
+                    if (parent.RegIPProcessor(extName, new ExecJSIntruderPayloadProcessor(parent, extName, config)))
+                        JOptionPane.showMessageDialog(mainPanel, "Apply processor success!\n" + summary, "Engine Selection",
+                                JOptionPane.INFORMATION_MESSAGE);
+                } finally {
+                    selection.close();
+                    applyBtn.setEnabled(true);
+                }
+            });
+        }, "BurpCrypto-EngineSelection").start();
+    }
+
+    /**
+     * Cut the script file, or the editor when there is none, down to the code the entry functions need.
+     * With a script file the editor is kept as glue, so whatever it uses from the bundle survives as well.
+     */
+    private void sliceBundle() {
+        String scriptFile = scriptFileText.getText().trim();
+        String bundle, glue;
+        try {
+            bundle = scriptFile.isEmpty() ? jsCodeText.getText() : JsScriptFile.read(new File(scriptFile).toPath());
+        } catch (Exception ex) {
+            JOptionPane.showMessageDialog(mainPanel, "script file can not be read: " + ex.getMessage());
+            return;
+        }
+        glue = scriptFile.isEmpty() ? null : jsCodeText.getText();
+        LinkedHashSet<String> defaultRoots = new LinkedHashSet<>();
+        for (String name : new String[]{methodText.getText().trim(), methodText.getText().trim() + IJsEngine.BatchSuffix,
+                initMethodText.getText().trim(), disposeMethodText.getText().trim()}) {
+            if (!name.isEmpty() && !name.equals(IJsEngine.BatchSuffix)) {
+                defaultRoots.add(name);
+            }
+        }
+        String roots = (String) JOptionPane.showInputDialog(mainPanel,
+                "Functions, globals and webpack module ids to keep, separated by commas:", "Slice Bundle",
+                JOptionPane.PLAIN_MESSAGE, null, null, String.join(", ", defaultRoots));
+        if (roots == null) return;
+        ArrayList<String> rootList = new ArrayList<>();
+        for (String root : roots.split(",")) {
+            if (!root.trim().isEmpty()) {
+                rootList.add(root.trim());
+            }
+        }
+        JsBundleSlicer.Result result;
+        try {
+            result = JsBundleSlicer.slice(bundle, glue, rootList);
+        } catch (Exception ex) {
+            JOptionPane.showMessageDialog(mainPanel, "bundle can not be parsed: " + ex.getMessage());
+            return;
+        }
+        String summary = String.format("Kept %d of %d statements and %d of %d webpack modules, %d of %d chars.",
+                result.keptStatements, result.totalStatements, result.keptModules, result.totalModules,
+                result.code.length(), bundle.length());
+        String[] options = scriptFile.isEmpty() ? new String[]{"Replace Js Code", "Save As...", "Cancel"} : new String[]{"Save As...", "Cancel"};
+        int choice = JOptionPane.showOptionDialog(mainPanel, summary, "Slice Bundle", JOptionPane.DEFAULT_OPTION,
+                JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+        if (choice < 0 || options[choice].equals("Cancel")) return;
+        if (options[choice].equals("Replace Js Code")) {
+            jsCodeText.setText(result.code);
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Save sliced script to");
+        if (!scriptFile.isEmpty()) {
+            chooser.setSelectedFile(new File((scriptFile.endsWith(".js") ? scriptFile.substring(0, scriptFile.length() - 3) : scriptFile) + ".sliced.js"));
+        }
+        if (chooser.showSaveDialog(mainPanel) != JFileChooser.APPROVE_OPTION) return;
+        try {
+            Files.write(chooser.getSelectedFile().toPath(), result.code.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception ex) {
+            JOptionPane.showMessageDialog(mainPanel, ex.getMessage());
+            return;
+        }
+        if (!scriptFile.isEmpty()) {
+            scriptFileText.setText(chooser.getSelectedFile().getAbsolutePath());
+        }
+    }
+
+    /**
+     * Hotspot tables of a profiled processor, the most expensive functions and lines by self time first.
+     */
+    private void showProfiler(String extName, RhinoProfiler profiler) {
+        String[] options = {"Refresh", "Reset", "Close"};
+        while (true) {
+            JTabbedPane tabs = new JTabbedPane();
+            tabs.addTab("Functions", new JScrollPane(GetHotspotTable(profiler.getFunctions())));
+            tabs.addTab("Lines", new JScrollPane(GetHotspotTable(profiler.getLines())));
+            tabs.setPreferredSize(new Dimension(800, 400));
+            int choice = JOptionPane.showOptionDialog(mainPanel, tabs, "Profiler - " + extName, JOptionPane.DEFAULT_OPTION,
+                    JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+            if (choice == 1) {
+                profiler.reset();
+            } else if (choice != 0) {
+                return;
+            }
+        }
+    }
+
+    private static JTable GetHotspotTable(java.util.List<RhinoProfiler.Stats> hotspots) {
+        String[] columns = {"Function", "Location", "Calls", "Self ms", "Total ms"};
+        Object[][] rows = new Object[Math.min(hotspots.size(), 500)][];
+        for (int i = 0; i < rows.length; i++) {
+            RhinoProfiler.Stats stats = hotspots.get(i);
+            rows[i] = new Object[]{stats.name, stats.location, stats.getCalls(), stats.getSelfMillis(), stats.getTotalMillis()};
+        }
+        JTable table = new JTable(new DefaultTableModel(rows, columns) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Class<?> getColumnClass(int column) {
+                return column == 2 ? Long.class : column > 2 ? Double.class : String.class;
+            }
+
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        });
+        table.setAutoCreateRowSorter(true);
+        return table;
+    }
+
+    /**
+     * Run a whole wordlist through a processor in batches, so "Get PlainText" works for every result without an Intruder attack.
+     */
+    private void precompute(ExecJSIntruderPayloadProcessor processor, File input, File output) {
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(input.toPath(), StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8)) {
+            ArrayList<byte[]> batch = new ArrayList<>(PrecomputeBatchSize);
+            String line;
+            while (true) {
+                line = reader.readLine();
+                if (line != null) {
+                    batch.add(line.getBytes(StandardCharsets.UTF_8));
+                }
+                if (batch.size() == PrecomputeBatchSize || (line == null && batch.size() > 0)) {
+                    for (byte[] result : processor.processPayloads(batch)) {
+                        writer.write(new String(result, StandardCharsets.UTF_8));
+                        writer.newLine();
+                    }
+                    count += batch.size();
+                    batch.clear();
+                }
+                if (line == null) break;
+            }
+        } catch (Exception ex) {
+            parent.callbacks.issueAlert(ex.toString());
+            ex.printStackTrace(parent.stderr);
+        }
+        final int total = count;
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(mainPanel, "Precompute finished, " + total + " payloads processed."));
+    }
+
+    private static String GetSnippetHelp(JsSnippet snippet) {
+        StringBuilder help = new StringBuilder("\r\n/* " + snippet.name + " module included.\n");
+        if (snippet.functionCase != null) {
+            for (FunctionCase functionCase : snippet.functionCase) {
+                help.append(" * ").append(functionCase.useCase).append("\n");
+            }
+        }
+        if (snippet.example != null) {
+            help.append(" * Example:\n * ").append(snippet.example.trim().replace("\n", "\n * ")).append("\n");
+        }
+        return help.append(" */").toString();
+    }
+
     private void initEditor(boolean useSyntax) {
         if (useSyntax) {
             jsCodeText = new RSyntaxTextArea(5, 10);
@@ -169,10 +586,10 @@ public class JsUIHandler {
             JCheckBoxMenuItem menuItem = new JCheckBoxMenuItem(snippet.getKey());
             menuItem.addActionListener(e -> {
                 if (menuItem.getState()) {
-                    includes.put(snippet.getKey(), snippet.getValue());
+                    bundledIncludes.add(snippet.getKey());
                     jsCodeText.append(JsSnippets.SnippetHelps.get(snippet.getKey()) + "\r\n\r\n");
                 } else {
-                    includes.remove(snippet.getKey());
+                    bundledIncludes.remove(snippet.getKey());
                     jsCodeText.setText(jsCodeText.getText().replace(JsSnippets.SnippetHelps.get(snippet.getKey()), ""));
                 }
             });
@@ -0,0 +1,73 @@
+package burp.execjs.engine;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.debug.Debugger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Scripts shipped inside the extension jar under burp/execjs/bundled. The build precompiles them to classes
+ * in the burp.execjs.bundled package, without those (e.g. running from the IDE) they are compiled at most once per JVM.
+ */
+public class BundledScripts {
+    public static final String CryptoJsNative = "CryptoJsNative";
+    public static final String WebCrypto = "WebCrypto";
+    public static final String EventLoop = "EventLoop";
+    public static final String Snippets = "snippets/";
+    private static final String ClassPackage = "burp.execjs.bundled.";
+
+    private static final ConcurrentHashMap<String, String> sources = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Script> scripts = new ConcurrentHashMap<>();
+
+    public static String getSource(String name) {
+        return sources.computeIfAbsent(name, key -> {
+            try (InputStream in = BundledScripts.class.getResourceAsStream("/burp/execjs/bundled/" + key + ".js")) {
+                if (in == null) {
+                    throw new IllegalArgumentException("bundled script " + key + " not found.");
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                return new String(out.toByteArray(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * @param cx the current thread's context, the script is compiled fully optimized and without debug hooks regardless of its settings.
+     */
+    public static Script getScript(Context cx, String name) {
+        return scripts.computeIfAbsent(name, key -> {
+            try {
+                return (Script) Class.forName(ClassPackage + key.replace('/', '.')).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | ClassCastException ex) {
+                // not precompiled, fall through to the source.
+            }
+            int optimizationLevel = cx.getOptimizationLevel();
+            boolean generatingDebug = cx.isGeneratingDebug();
+            Debugger debugger = cx.getDebugger();
+            Object debuggerData = cx.getDebuggerContextData();
+            try {
+                // a profiling context has a debugger attached, which compiled classes cannot report to.
+                cx.setDebugger(null, null);
+                cx.setGeneratingDebug(false);
+                cx.setOptimizationLevel(RhinoRuntime.FullyOptimized);
+                return cx.compileString(getSource(key), key, 1, null);
+            } finally {
+                cx.setGeneratingDebug(generatingDebug);
+                cx.setOptimizationLevel(optimizationLevel);
+                cx.setDebugger(debugger, debuggerData);
+            }
+        });
+    }
+}
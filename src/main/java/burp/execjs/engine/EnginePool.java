@@ -0,0 +1,98 @@
+package burp.execjs.engine;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of prepared script engine instances, Intruder threads borrow one per call and give it back.
+ * Instances are created lazily up to {@code maxSize}, a caller that finds the pool exhausted waits for a free one.
+ */
+public class EnginePool<T> {
+    public static final int DefaultSize = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    public interface Factory<T> {
+        T create() throws Exception;
+
+        void destroy(T item);
+    }
+
+    private final Factory<T> factory;
+    private final int maxSize;
+    private final LinkedBlockingQueue<T> idle = new LinkedBlockingQueue<>();
+    private final Set<T> all = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger created = new AtomicInteger();
+    private volatile boolean closed;
+
+    public EnginePool(Factory<T> factory, int maxSize) {
+        this.factory = factory;
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Create an instance up front so configuration errors are reported when the processor is added.
+     */
+    public void prewarm() throws Exception {
+        giveBack(borrow());
+    }
+
+    public T borrow() throws Exception {
+        while (!closed) {
+            T item = idle.poll();
+            if (item != null) {
+                return item;
+            }
+            int count = created.get();
+            if (count < maxSize) {
+                if (created.compareAndSet(count, count + 1)) {
+                    try {
+                        item = factory.create();
+                    } catch (Exception ex) {
+                        created.decrementAndGet();
+                        throw ex;
+                    }
+                    all.add(item);
+                    return item;
+                }
+            } else {
+                item = idle.poll(100, TimeUnit.MILLISECONDS);
+                if (item != null) {
+                    return item;
+                }
+            }
+        }
+        throw new IllegalStateException("engine pool closed.");
+    }
+
+    public void giveBack(T item) {
+        if (closed) {
+            invalidate(item);
+        } else {
+            idle.offer(item);
+        }
+    }
+
+    /**
+     * Drop an instance whose state can no longer be trusted, e.g. after the script threw halfway through.
+     */
+    public void invalidate(T item) {
+        if (all.remove(item)) {
+            created.decrementAndGet();
+            factory.destroy(item);
+        }
+    }
+
+    public void close() {
+        closed = true;
+        for (T item : all) {
+            invalidate(item);
+        }
+        idle.clear();
+    }
+}
@@ -5,21 +5,69 @@ import burp.execjs.CustomAjaxController;
 import burp.execjs.IJsEngine;
 import burp.execjs.JsConfig;
 import com.gargoylesoftware.htmlunit.BrowserVersion;
-import com.gargoylesoftware.htmlunit.ScriptResult;
+import com.gargoylesoftware.htmlunit.ScriptException;
+import com.gargoylesoftware.htmlunit.SilentCssErrorHandler;
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.javascript.SilentJavaScriptErrorListener;
+import com.gargoylesoftware.htmlunit.javascript.TimeoutError;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJob;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager;
+import net.sourceforge.htmlunit.corejs.javascript.Function;
+import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
+import net.sourceforge.htmlunit.corejs.javascript.Undefined;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
 
 public class HtmlUnitEngine implements IJsEngine {
-    WebClient webClient;
-    public String methodName;
+    // timers run by one drain, a script that keeps starting new ones is left to HtmlUnit's job thread after that.
+    private static final int MaxDrainedJobs = 10000;
+
+    EnginePool<HtmlPage> pages;
     public BurpExtender parent;
     String jsCode = "";
+    long timeoutMillis;
+    String initMethodName;
+    String initParams;
+    String disposeMethodName;
+    boolean lite;
 
     public void setConfig(JsConfig config) throws Exception {
-        jsCode = config.CryptoJsCode;
-        this.methodName = config.MethodName;
+        jsCode = "";
+        for (String include : config.Includes) {
+            jsCode += BundledScripts.getSource(BundledScripts.Snippets + include) + "\r\n";
+        }
+        jsCode += config.CryptoJsCode;
+        this.timeoutMillis = config.TimeoutMillis;
+        this.initMethodName = config.InitMethodName;
+        this.initParams = config.InitParams;
+        this.disposeMethodName = config.DisposeMethodName;
+        this.lite = config.LiteHtmlUnit;
+        this.pages = new EnginePool<>(new EnginePool.Factory<HtmlPage>() {
+            @Override
+            public HtmlPage create() throws Exception {
+                return loadJsCode(jsCode);
+            }
+
+            @Override
+            public void destroy(HtmlPage pageRef) {
+                if (!isEmpty(disposeMethodName)) {
+                    try {
+                        callFunction(pageRef, disposeMethodName, new Object[0]);
+                    } catch (Exception ex) {
+                        if (parent != null) {
+                            parent.stderr.println("js dispose failed: " + ex.getMessage());
+                        }
+                    }
+                }
+                pageRef.getWebClient().close();
+            }
+        }, EnginePool.DefaultSize);
+        this.pages.prewarm();
     }
 
     @Override
@@ -28,35 +76,173 @@ public class HtmlUnitEngine implements IJsEngine {
     }
 
     private HtmlPage initEngine() throws IOException {
-        webClient = new WebClient(BrowserVersion.BEST_SUPPORTED);
+        WebClient webClient = new WebClient(BrowserVersion.BEST_SUPPORTED);
         webClient.getOptions().setJavaScriptEnabled(true);
         webClient.getOptions().setUseInsecureSSL(true);
         webClient.getOptions().setCssEnabled(false);
         webClient.getOptions().setThrowExceptionOnScriptError(true);
         webClient.setAjaxController(new CustomAjaxController());
+        // HtmlUnit checks this deadline from its own instruction observer, once per top level call.
+        webClient.setJavaScriptTimeout(timeoutMillis);
+        if (lite) {
+            // a page that only hosts crypto code, everything a browser does besides running js is switched off.
+            webClient.getOptions().setDownloadImages(false);
+            webClient.getOptions().setAppletEnabled(false);
+            webClient.getOptions().setActiveXNative(false);
+            webClient.getOptions().setPopupBlockerEnabled(true);
+            webClient.getOptions().setGeolocationEnabled(false);
+            webClient.getOptions().setWebSocketEnabled(false);
+            webClient.getOptions().setHistorySizeLimit(0);
+            webClient.getOptions().setHistoryPageCacheLimit(0);
+            webClient.setFrameContentHandler(frame -> false);
+            webClient.setCssErrorHandler(new SilentCssErrorHandler());
+            webClient.setJavaScriptErrorListener(new SilentJavaScriptErrorListener());
+            webClient.setIncorrectnessListener((message, origin) -> {
+            });
+        }
         return webClient.getPage("about:blank");
     }
 
-    public HtmlPage loadJsCode(String jsCode) {
+    public HtmlPage loadJsCode(String jsCode) throws Exception {
+        HtmlPage pageRef = initEngine();
         try {
-            HtmlPage pageRef = initEngine();
             pageRef.executeJavaScript(jsCode);
-            return pageRef;
-        } catch (Exception ex) {
-            this.parent.stderr.write(ex.getMessage());
-            return null;
+            if (!isEmpty(initMethodName)) {
+                Object params = isEmpty(initParams) ? Undefined.instance : callFunction(pageRef, "JSON", "parse", initParams);
+                callFunction(pageRef, initMethodName, new Object[]{params});
+                if (lite) {
+                    drainJobs(pageRef);
+                } else {
+                    // timers started by init, e.g. behind a returned promise, run on HtmlUnit's job thread, let them finish first.
+                    pageRef.getWebClient().waitForBackgroundJavaScript(timeoutMillis > 0 ? timeoutMillis : DefaultAwaitMillis);
+                }
+            }
+        } catch (Exception | Error ex) {
+            pageRef.getWebClient().close();
+            throw ex;
+        }
+        return pageRef;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    /**
+     * Lite pages: run the pending timers now on the calling thread, earliest first and without waiting for their delay,
+     * so whatever a method finishes behind setTimeout is done before its result is read. Stops at an interval timer,
+     * draining one would never end.
+     */
+    private void drainJobs(HtmlPage pageRef) {
+        JavaScriptJobManager jobs = pageRef.getEnclosingWindow().getJobManager();
+        for (int i = 0; i < MaxDrainedJobs; i++) {
+            JavaScriptJob job = jobs.getEarliestJob();
+            if (job == null || job.isPeriodic()) {
+                return;
+            }
+            // only the earliest job may be run and only once it is due, moving it up keeps it the earliest.
+            job.setTargetExecutionTime(System.currentTimeMillis());
+            jobs.runSingleJob(job);
         }
     }
 
-    public String eval(String param) throws Exception {
-        HtmlPage pageRef = this.loadJsCode(jsCode);
-        ScriptResult result = pageRef.executeJavaScript(this.methodName + "(\"" + jsParamReCode(param) + "\");");
-        pageRef.cleanUp();
-        return result.getJavaScriptResult().toString();
+    /**
+     * Call a method for a result, on lite pages the timers it started have run when this returns.
+     */
+    private Object callMethod(HtmlPage pageRef, String functionName, Object[] functionParams) throws Exception {
+        Object result = callFunction(pageRef, functionName, functionParams);
+        if (lite) {
+            drainJobs(pageRef);
+        }
+        return result;
     }
 
-    public String jsParamReCode(String param) {
-        return param.replace("\\", "\\\\").replace("\"", "\\\"");
+    private Object callFunction(HtmlPage pageRef, String objectName, String functionName, Object param) {
+        Scriptable window = pageRef.getEnclosingWindow().getScriptableObject();
+        Scriptable object = (Scriptable) ScriptableObject.getProperty(window, objectName);
+        Object function = ScriptableObject.getProperty(object, functionName);
+        return pageRef.executeJavaScriptFunction(function, object, new Object[]{param}, pageRef).getJavaScriptResult();
+    }
+
+    public Object callFunction(HtmlPage pageRef, String functionName, Object[] functionParams) throws Exception {
+        Scriptable window = pageRef.getEnclosingWindow().getScriptableObject();
+        Object function = ScriptableObject.getProperty(window, functionName);
+        if (!(function instanceof Function)) {
+            // a ScriptException, the page itself is fine.
+            throw new ScriptException(pageRef, new IllegalArgumentException("function " + functionName + " not found."));
+        }
+        return pageRef.executeJavaScriptFunction(function, window, functionParams, pageRef).getJavaScriptResult();
+    }
+
+    private interface PageCall<T> {
+        T call(HtmlPage pageRef) throws Exception;
+    }
+
+    private <T> T withPage(PageCall<T> action) throws Exception {
+        HtmlPage pageRef = pages.borrow();
+        boolean reusable = false;
+        try {
+            T result = action.call(pageRef);
+            reusable = true;
+            return result;
+        } catch (ScriptException ex) {
+            reusable = true;  // a script level error leaves the page usable.
+            throw ex;
+        } catch (RuntimeException ex) {
+            // the timeout reaches us wrapped by HtmlUnit's javascript error handling.
+            if (ex.getCause() instanceof TimeoutError) {
+                throw new TimeoutException("js execution exceeded its time limit of " + timeoutMillis + " ms per payload.");
+            }
+            throw ex;
+        } finally {
+            if (reusable) {
+                pages.giveBack(pageRef);
+            } else {
+                pages.invalidate(pageRef);
+            }
+        }
+    }
+
+    public String eval(String methodName, String param) throws Exception {
+        return withPage(pageRef -> callMethod(pageRef, methodName, new Object[]{param}).toString());
+    }
+
+    public List<String> evalBatch(String methodName, List<String> params) throws Exception {
+        return withPage(pageRef -> {
+            Scriptable window = pageRef.getEnclosingWindow().getScriptableObject();
+            ArrayList<String> results = new ArrayList<>(params.size());
+            if (ScriptableObject.getProperty(window, methodName + BatchSuffix) instanceof Function) {
+                // every item is a string, so Array(...) always builds a list of the arguments.
+                Object input = callFunction(pageRef, "Array", params.toArray());
+                Object output;
+                pageRef.getWebClient().setJavaScriptTimeout(timeoutMillis * params.size());
+                try {
+                    output = callMethod(pageRef, methodName + BatchSuffix, new Object[]{input});
+                } finally {
+                    pageRef.getWebClient().setJavaScriptTimeout(timeoutMillis);
+                }
+                if (!(output instanceof Scriptable)) {
+                    throw new ScriptException(pageRef, new IllegalArgumentException("function " + methodName + BatchSuffix + " must return an array."));
+                }
+                Scriptable array = (Scriptable) output;
+                int length = ((Number) ScriptableObject.getProperty(array, "length")).intValue();
+                for (int i = 0; i < length; i++) {
+                    results.add(ScriptableObject.getProperty(array, i).toString());
+                }
+            } else {
+                for (String param : params) {
+                    results.add(callMethod(pageRef, methodName, new Object[]{param}).toString());
+                }
+            }
+            return results;
+        });
+    }
+
+    @Override
+    public void close() {
+        if (pages != null) {
+            pages.close();
+        }
     }
 
 }
@@ -3,21 +3,98 @@ package burp.execjs.engine;
 import burp.BurpExtender;
 import burp.execjs.IJsEngine;
 import burp.execjs.JsConfig;
+import burp.utils.EventLoop;
+import burp.utils.NativeCrypto;
 
 import javax.script.Invocable;
 import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class JreBuiltInEngine implements IJsEngine {
+    /**
+     * Runs a whole batch inside the script engine, through the user's batch function when there is one.
+     */
+    private static final String BatchHelper = "function __burpCryptoBatch(name, items, awaitMillis) {" +
+            "var input = Java.from(items), fn = this[name + '" + BatchSuffix + "'], output;" +
+            "if (typeof fn === 'function') { output = __burpCryptoAwait(fn(input), awaitMillis); } else {" +
+            "fn = this[name]; output = []; for (var i = 0; i < input.length; i++) { output.push(__burpCryptoAwait(fn(input[i]), awaitMillis)); } }" +
+            "return Java.to(output.map(String), 'java.lang.String[]'); }";
+    /**
+     * Byte mode for JSR-223 engines, their typed arrays cannot wrap a Java array so both directions copy here.
+     */
+    private static final String BytesHelper = "function __burpCryptoBytes(name, bytes, awaitMillis) {" +
+            "var input = new Uint8Array(bytes.length); for (var i = 0; i < bytes.length; i++) { input[i] = bytes[i] & 0xff; }" +
+            "var output = __burpCryptoAwait(this[name](input), awaitMillis);" +
+            "if (output instanceof ArrayBuffer) { output = new Uint8Array(output); }" +
+            "else if (output && output.buffer instanceof ArrayBuffer) { output = new Uint8Array(output.buffer, output.byteOffset, output.byteLength); }" +
+            "else { return String(output); }" +
+            "var result = new (Java.type('byte[]'))(output.length); for (var j = 0; j < output.length; j++) { result[j] = output[j]; }" +
+            "return result; }";
+    /**
+     * Calls an init or dispose function, with the init parameters parsed from JSON, and waits for a returned promise.
+     */
+    private static final String LifecycleHelper = "function __burpCryptoLifecycle(name, params, awaitMillis) {" +
+            "var fn = this[name]; if (typeof fn !== 'function') { throw new Error('function ' + name + ' not found.'); }" +
+            "return __burpCryptoAwait(params ? fn(JSON.parse(params)) : fn(), awaitMillis); }";
 
-    public ScriptEngine engine;
-    public String methodName;
+    public volatile ScriptEngine engine;
+    private final Object reloadLock = new Object();
+    EnginePool<ScriptEngine> engines;
+    ScriptEngineFactory factory;
+    public String threading;
     public BurpExtender parent;
+    String jsCode = "";
+    boolean nativeCryptoJs;
+    boolean webCrypto;
+    long timeoutMillis;
+    List<String> includes;
+    String initMethodName;
+    String initParams;
+    String disposeMethodName;
 
     public void setConfig(JsConfig config) throws Exception {
-        this.loadJsCode(config.CryptoJsCode);
-        this.methodName = config.MethodName;
+        this.jsCode = config.CryptoJsCode;
+        this.nativeCryptoJs = config.NativeCryptoJs;
+        this.webCrypto = config.WebCrypto;
+        this.timeoutMillis = config.TimeoutMillis;
+        this.includes = config.Includes;
+        this.initMethodName = config.InitMethodName;
+        this.initParams = config.InitParams;
+        this.disposeMethodName = config.DisposeMethodName;
+        this.factory = findFactory();
+        // JSR-223 THREADING: null means not thread safe, every other value allows concurrent calls on one engine.
+        this.threading = (String) factory.getParameter("THREADING");
+        if (threading == null) {
+            this.engines = new EnginePool<>(new EnginePool.Factory<ScriptEngine>() {
+                @Override
+                public ScriptEngine create() throws Exception {
+                    return loadJsCode(jsCode);
+                }
+
+                @Override
+                public void destroy(ScriptEngine item) {
+                    dispose(item);
+                }
+            }, EnginePool.DefaultSize);
+            this.engines.prewarm();
+        } else {
+            this.engine = loadJsCode(jsCode);
+        }
+        if (parent != null) {
+            parent.stdout.println(String.format("JreBuiltIn engine: %s %s, THREADING=%s, %s.",
+                    factory.getEngineName(), factory.getEngineVersion(), threading,
+                    threading == null ? "using a pool of " + engines.getMaxSize() + " engines" : "sharing one engine"));
+        }
     }
 
     @Override
@@ -25,23 +102,179 @@ public class JreBuiltInEngine implements IJsEngine {
         this.parent = parent;
     }
 
-    private void initEngine() {
-        ScriptEngineManager scriptEngineManager = new ScriptEngineManager();
-        engine = scriptEngineManager.getEngineByName("javascript");
+    private static ScriptEngineFactory findFactory() {
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("javascript");
+        if (engine == null) {
+            throw new IllegalStateException("no javascript ScriptEngine available in this JRE.");
+        }
+        return engine.getFactory();
+    }
+
+    public ScriptEngine loadJsCode(String jsCode) throws ScriptException {
+        ScriptEngine newEngine = factory.getScriptEngine();
+        newEngine.eval("window=this;navigator={};");
+        newEngine.eval(BatchHelper);
+        newEngine.eval(BytesHelper);
+        newEngine.eval(LifecycleHelper);
+        newEngine.put("EventLoop", new EventLoop());
+        newEngine.eval(BundledScripts.getSource(BundledScripts.EventLoop));
+        if (nativeCryptoJs || webCrypto) {
+            newEngine.put("NativeCrypto", new NativeCrypto());
+        }
+        if (webCrypto) {
+            newEngine.eval(BundledScripts.getSource(BundledScripts.WebCrypto));
+        }
+        for (String include : includes) {
+            newEngine.eval(BundledScripts.getSource(BundledScripts.Snippets + include));
+        }
+        newEngine.eval(jsCode);
+        if (nativeCryptoJs) {
+            newEngine.eval(BundledScripts.getSource(BundledScripts.CryptoJsNative));
+        }
+        if (!isEmpty(initMethodName)) {
+            try {
+                ((Invocable) newEngine).invokeFunction("__burpCryptoLifecycle", initMethodName, initParams, awaitMillis());
+            } catch (NoSuchMethodException ex) {
+                throw new ScriptException(ex);
+            }
+        }
+        return newEngine;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.trim().isEmpty();
     }
 
-    public void loadJsCode(String jsCode) {
+    /**
+     * Run the dispose function of an engine that is dropped, bounded by the payload timeout since nobody waits for it.
+     */
+    private void dispose(ScriptEngine target) {
+        if (isEmpty(disposeMethodName) || target == null) {
+            return;
+        }
         try {
-            initEngine();
-            engine.eval("window=this;navigator={};");
-            engine.eval(jsCode);
+            withTimeout(1, () -> ((Invocable) target).invokeFunction("__burpCryptoLifecycle", disposeMethodName, null, awaitMillis()));
         } catch (Exception ex) {
-            this.parent.stderr.write(ex.getMessage());
+            if (parent != null) {
+                parent.stderr.println("js dispose failed: " + ex.getMessage());
+            }
+        }
+    }
+
+    private interface EngineCall<T> {
+        T call(ScriptEngine target) throws Exception;
+    }
+
+    /**
+     * Run {@code action} on the shared engine or a pooled one. An engine whose call timed out
+     * may have been stopped half way, so it is replaced instead of being reused.
+     */
+    private <T> T withEngine(int payloads, EngineCall<T> action) throws Exception {
+        if (engines == null) {
+            ScriptEngine shared = engine;
+            try {
+                return withTimeout(payloads, () -> action.call(shared));
+            } catch (TimeoutException ex) {
+                replaceShared(shared);
+                throw ex;
+            }
+        }
+        ScriptEngine pooled = engines.borrow();
+        boolean reusable = true;
+        try {
+            return withTimeout(payloads, () -> action.call(pooled));
+        } catch (TimeoutException ex) {
+            reusable = false;
+            throw ex;
+        } finally {
+            if (reusable) {
+                engines.giveBack(pooled);
+            } else {
+                engines.invalidate(pooled);
+            }
+        }
+    }
+
+    /**
+     * Swap in a fresh shared engine after a call on {@code stale} timed out. Calls timing out together
+     * reload it once, the first one replaces it and the stale engine is disposed.
+     */
+    private void replaceShared(ScriptEngine stale) throws ScriptException {
+        synchronized (reloadLock) {
+            if (engine != stale) {
+                return;
+            }
+            engine = loadJsCode(jsCode);
+        }
+        dispose(stale);
+    }
+
+    /**
+     * JSR-223 has no way to interrupt a script, so a call past its deadline is abandoned and its
+     * thread stopped. Every call gets a thread of its own, stopping it can never hit another payload's call.
+     * Thread.stop is gone from recent JREs, where the thread is left to finish alone.
+     */
+    @SuppressWarnings("deprecation")
+    private <T> T withTimeout(int payloads, Callable<T> call) throws Exception {
+        if (timeoutMillis <= 0) {
+            return call.call();
         }
+        FutureTask<T> future = new FutureTask<>(call);
+        Thread worker = new Thread(future, "BurpCrypto-JsRunner");
+        worker.setDaemon(true);
+        worker.start();
+        try {
+            return future.get(timeoutMillis * payloads, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            throw ex;
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            try {
+                worker.stop();
+            } catch (UnsupportedOperationException ignored) {
+            }
+            throw new TimeoutException("js execution exceeded its time limit of " + timeoutMillis + " ms per payload.");
+        }
+    }
+
+    private long awaitMillis() {
+        return timeoutMillis > 0 ? timeoutMillis : DefaultAwaitMillis;
+    }
+
+    public String eval(String methodName, String param) throws Exception {
+        return withEngine(1, target -> {
+            Object result = ((Invocable) target).invokeFunction(methodName, param);
+            if (!(result instanceof CharSequence || result instanceof Number || result instanceof Boolean)) {
+                // a script object, maybe a thenable to wait for.
+                result = ((Invocable) target).invokeFunction("__burpCryptoAwait", result, awaitMillis());
+            }
+            return result.toString();
+        });
+    }
+
+    @Override
+    public byte[] evalBytes(String methodName, byte[] param) throws Exception {
+        return withEngine(1, target -> {
+            Object result = ((Invocable) target).invokeFunction("__burpCryptoBytes", methodName, param, awaitMillis());
+            return result instanceof byte[] ? (byte[]) result : result.toString().getBytes(StandardCharsets.UTF_8);
+        });
+    }
+
+    public List<String> evalBatch(String methodName, List<String> params) throws Exception {
+        Object[] input = params.toArray(new String[0]);
+        return withEngine(params.size(), target ->
+                Arrays.asList((String[]) ((Invocable) target).invokeFunction("__burpCryptoBatch", methodName, input, awaitMillis())));
     }
 
-    public String eval(String param) throws ScriptException, NoSuchMethodException {
-        Invocable invocable = (Invocable) engine;
-        return invocable.invokeFunction(methodName, param).toString();
+    @Override
+    public void close() {
+        if (engines != null) {
+            engines.close();
+        }
+        dispose(engine);
+        engine = null;
     }
 }
@@ -0,0 +1,128 @@
+package burp.execjs.engine;
+
+import burp.execjs.IJsEngine;
+import burp.execjs.JsConfig;
+import burp.execjs.JsRuntimeRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entry point of a js worker process started by WorkerEngine. The first frame loads the script, after that
+ * requests are run on a few threads and answered in the order they finish. The worker exits when its stdin
+ * is closed, running the script's dispose function on the way out.
+ */
+public class JsWorker {
+    private static final long MB = 1024 * 1024;
+
+    private final DataOutputStream out;
+    private IJsEngine engine;
+
+    private JsWorker(DataOutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @param args the number of threads running requests.
+     */
+    public static void main(String[] args) throws Exception {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        // stdout carries the protocol, whatever the script or a library prints goes to stderr instead.
+        System.setOut(System.err);
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        new JsWorker(out).serve(in, threads);
+        System.exit(0);
+    }
+
+    private void serve(DataInputStream in, int threads) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "BurpCrypto-JsWorker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        byte[] frame;
+        while ((frame = WorkerProtocol.readFrame(in)) != null) {
+            DataInputStream request = new DataInputStream(new ByteArrayInputStream(frame));
+            int id = request.readInt();
+            byte op = request.readByte();
+            if (op == WorkerProtocol.Load) {
+                // loaded before anything else is read, requests pipelined behind it wait for the script.
+                handle(id, op, request);
+            } else {
+                executor.execute(() -> handle(id, op, request));
+            }
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        if (engine != null) {
+            engine.close();
+        }
+    }
+
+    private void handle(int id, byte op, DataInputStream request) {
+        byte[] response;
+        try {
+            WorkerProtocol.Builder ok = new WorkerProtocol.Builder(id, WorkerProtocol.Ok);
+            ok.out.writeInt(usedHeapMb());
+            switch (op) {
+                case WorkerProtocol.Load:
+                    JsConfig config = WorkerProtocol.readConfig(request);
+                    engine = JsRuntimeRegistry.create(config);
+                    engine.setConfig(config);
+                    break;
+                case WorkerProtocol.Eval:
+                    WorkerProtocol.writeString(ok.out, loaded().eval(WorkerProtocol.readString(request), WorkerProtocol.readString(request)));
+                    break;
+                case WorkerProtocol.EvalBatch:
+                    WorkerProtocol.writeStrings(ok.out, loaded().evalBatch(WorkerProtocol.readString(request), WorkerProtocol.readStrings(request)));
+                    break;
+                case WorkerProtocol.EvalBytes:
+                    WorkerProtocol.writeBytes(ok.out, loaded().evalBytes(WorkerProtocol.readString(request), WorkerProtocol.readBytes(request)));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown op " + op + ".");
+            }
+            response = ok.toByteArray();
+        } catch (Throwable ex) {
+            try {
+                WorkerProtocol.Builder failed = new WorkerProtocol.Builder(id, WorkerProtocol.Failed);
+                failed.out.writeInt(usedHeapMb());
+                WorkerProtocol.writeString(failed.out, ex.toString());
+                response = failed.toByteArray();
+            } catch (IOException impossible) {
+                return;
+            }
+        }
+        try {
+            synchronized (out) {
+                WorkerProtocol.writeFrame(out, response);
+                out.flush();
+            }
+        } catch (IOException ex) {
+            // the parent is gone, stdin hits its end next and the worker exits.
+        }
+    }
+
+    private IJsEngine loaded() {
+        if (engine == null) {
+            throw new IllegalStateException("js code not loaded.");
+        }
+        return engine;
+    }
+
+    private static int usedHeapMb() {
+        Runtime runtime = Runtime.getRuntime();
+        return (int) ((runtime.totalMemory() - runtime.freeMemory()) / MB);
+    }
+}
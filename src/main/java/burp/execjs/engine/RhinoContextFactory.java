@@ -0,0 +1,130 @@
+package burp.execjs.engine;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Hands out contexts that abort a call once it runs past its instruction budget or wall-clock deadline.
+ * Rhino only emits the instruction checks into code compiled under such a context, so every runtime
+ * compiles through the same factory it later runs with.
+ */
+public class RhinoContextFactory extends ContextFactory {
+    // instructions between two checks, small enough to notice a deadline within a few milliseconds.
+    private static final int ObserveThreshold = 10000;
+
+    private final long instructionBudget;
+    private final long timeoutMillis;
+    private final RhinoProfiler profiler;
+    private final boolean dynamicScope;
+
+    public RhinoContextFactory(long instructionBudget, long timeoutMillis) {
+        this(instructionBudget, timeoutMillis, null, false);
+    }
+
+    /**
+     * @param profiler     attached to every context when not null, profiled code must run interpreted.
+     * @param dynamicScope resolve globals in the scope a call is made with rather than the one functions were
+     *                     defined in, which is what lets calls on a shared scope keep their globals apart.
+     */
+    public RhinoContextFactory(long instructionBudget, long timeoutMillis, RhinoProfiler profiler, boolean dynamicScope) {
+        this.instructionBudget = instructionBudget;
+        this.timeoutMillis = timeoutMillis;
+        this.profiler = profiler;
+        this.dynamicScope = dynamicScope;
+    }
+
+    @Override
+    protected boolean hasFeature(Context cx, int featureIndex) {
+        if (featureIndex == Context.FEATURE_DYNAMIC_SCOPE) {
+            return dynamicScope;
+        }
+        return super.hasFeature(cx, featureIndex);
+    }
+
+    public boolean isLimited() {
+        return instructionBudget > 0 || timeoutMillis > 0;
+    }
+
+    @Override
+    protected Context makeContext() {
+        BudgetContext cx = new BudgetContext(this);
+        if (isLimited()) {
+            cx.setInstructionObserverThreshold(ObserveThreshold);
+        }
+        if (profiler != null) {
+            cx.setGeneratingDebug(true);
+            cx.setOptimizationLevel(RhinoRuntime.Interpreted);
+            cx.setDebugger(profiler, null);
+        }
+        return cx;
+    }
+
+    /**
+     * Start a fresh budget on the current context, scaled by the number of payloads the call handles.
+     */
+    public void startBudget(Context cx, int payloads) {
+        if (cx instanceof BudgetContext) {
+            BudgetContext budget = (BudgetContext) cx;
+            budget.instructions = 0;
+            budget.instructionLimit = instructionBudget * payloads;
+            budget.deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis * payloads : 0;
+        }
+    }
+
+    /**
+     * Run setup work such as a script's init function outside of the budget of the call in progress,
+     * which resumes afterwards with its deadline moved by the time the work took.
+     */
+    public <T> T unbudgeted(Context cx, Callable<T> work) throws Exception {
+        if (!(cx instanceof BudgetContext)) {
+            return work.call();
+        }
+        BudgetContext budget = (BudgetContext) cx;
+        long instructions = budget.instructions, instructionLimit = budget.instructionLimit, deadline = budget.deadline;
+        long started = System.currentTimeMillis();
+        budget.instructionLimit = 0;
+        budget.deadline = 0;
+        try {
+            return work.call();
+        } finally {
+            budget.instructions = instructions;
+            budget.instructionLimit = instructionLimit;
+            budget.deadline = deadline > 0 ? deadline + System.currentTimeMillis() - started : 0;
+        }
+    }
+
+    @Override
+    protected void observeInstructionCount(Context cx, int instructionCount) {
+        BudgetContext budget = (BudgetContext) cx;
+        budget.instructions += instructionCount;
+        if (budget.instructionLimit > 0 && budget.instructions > budget.instructionLimit) {
+            throw new BudgetExceeded("js execution exceeded its budget of " + budget.instructionLimit + " instructions.");
+        }
+        if (budget.deadline > 0 && System.currentTimeMillis() > budget.deadline) {
+            throw new BudgetExceeded("js execution exceeded its time limit of " + timeoutMillis + " ms per payload.");
+        }
+    }
+
+    private static class BudgetContext extends Context {
+        long instructions;
+        long instructionLimit;
+        long deadline;
+
+        BudgetContext(ContextFactory factory) {
+            super(factory);
+        }
+    }
+
+    /**
+     * An Error rather than an Exception, so try/catch in the script cannot swallow it.
+     */
+    public static class BudgetExceeded extends Error {
+        private static final long serialVersionUID = 1L;
+
+        public BudgetExceeded(String message) {
+            super(message);
+        }
+    }
+}
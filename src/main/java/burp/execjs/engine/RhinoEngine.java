@@ -4,23 +4,53 @@ import burp.BurpExtender;
 
 import burp.execjs.IJsEngine;
 import burp.execjs.JsConfig;
-import burp.utils.HttpUtils;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Function;
+import org.mozilla.javascript.ScriptRuntime;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
 
-import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class RhinoEngine implements IJsEngine {
-    Context engine;
-    public String methodName;
+    private static final ExecutorService compiler = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "BurpCrypto-RhinoCompiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // how often threads check whether the interpreted runtime can be dropped after the swap.
+    private static final long RetiredSweepMillis = 1000;
+
+    volatile RhinoRuntime runtime;
+    // the interpreted runtime after the swap, until the last thread running on it is gone.
+    volatile RhinoRuntime retired;
+    private volatile long nextSweep;
+    RhinoProfiler profiler;
+    volatile boolean closed;
+    Future<?> compilation;
+    JsConfig config;
     public BurpExtender parent;
     String jsCode = "window=this;navigator={};";
 
     public void setConfig(JsConfig config) throws Exception {
         jsCode += config.CryptoJsCode;
-        this.methodName = config.MethodName;
+        this.config = config;
+        this.loadJsCode(jsCode);
+    }
+
+    /**
+     * @return the profiler of this engine, null unless the config asked for profiling.
+     */
+    public RhinoProfiler getProfiler() {
+        return profiler;
     }
 
     @Override
@@ -28,37 +58,203 @@ public class RhinoEngine implements IJsEngine {
         this.parent = parent;
     }
 
-    private Scriptable initEngine() throws InvocationTargetException, IllegalAccessException, InstantiationException {
-        engine = Context.enter();
-        Scriptable scope = engine.initStandardObjects();
-        ScriptableObject.defineClass(scope, HttpUtils.class);
-        return scope;
+    /**
+     * Start in interpreted mode so the processor is usable right away, then compile to JVM bytecode at
+     * the highest optimization level in the background and swap the runtime in once it is ready.
+     * The swap is invisible to the script, see {@link #runtimeForThread()}.
+     * Scripts compiled before come straight from the disk cache in their compiled form.
+     */
+    public void loadJsCode(String jsCode) throws Exception {
+        if (config.Profile) {
+            // the debugger hooks only fire in the interpreter, a profiled runtime stays interpreted.
+            profiler = new RhinoProfiler();
+            runtime = new RhinoRuntime(jsCode, RhinoRuntime.Interpreted, config, profiler);
+            return;
+        }
+        if (RhinoRuntime.isCached(jsCode, RhinoRuntime.FullyOptimized, config)) {
+            try {
+                runtime = new RhinoRuntime(jsCode, RhinoRuntime.FullyOptimized, config);
+                return;
+            } catch (IllegalStateException ex) {
+                // unusable cache entry, it has been dropped, go the usual way.
+            }
+        }
+        runtime = new RhinoRuntime(jsCode, RhinoRuntime.Interpreted, config);
+        compilation = compiler.submit(() -> {
+            try {
+                RhinoRuntime compiled = new RhinoRuntime(jsCode, RhinoRuntime.FullyOptimized, config);
+                synchronized (this) {
+                    if (!closed) {
+                        retired = runtime;
+                        runtime = compiled;
+                        return;
+                    }
+                }
+                compiled.dispose();
+            } catch (Throwable ex) {
+                // Rhino already interprets single functions over the 64KB method limit, if the
+                // compiled tier still fails the interpreted runtime simply keeps serving.
+                if (parent != null) {
+                    parent.stderr.println("Rhino compile failed, staying in interpreted mode: " + ex.getMessage());
+                }
+            }
+        });
     }
 
-    public Scriptable loadJsCode(String jsCode) {
+    /**
+     * Wait for the background compile, e.g. before measuring the engine.
+     *
+     * @return whether the compiled runtime is in use (or there is none to wait for) within {@code millis}.
+     */
+    public boolean awaitCompiled(long millis) throws InterruptedException {
+        Future<?> pending = compilation;
+        if (pending == null) {
+            return true;
+        }
         try {
-            Scriptable scope = initEngine();
-            engine.evaluateString(scope, jsCode, RhinoEngine.class.getSimpleName(), 1, null);
-            return scope;
-        } catch (Exception ex) {
-            this.parent.stderr.write(ex.getMessage());
-            return null;
+            pending.get(millis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (ExecutionException | TimeoutException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * The runtime the calling thread runs on. A thread that already has a scope in the interpreted runtime stays
+     * there: its functions and state live in that scope, moving it would mean running the script's top level
+     * and init again. Threads starting after the swap run compiled, and the interpreted runtime is disposed
+     * once its last thread is gone.
+     */
+    private RhinoRuntime runtimeForThread() {
+        RhinoRuntime previous = retired;
+        if (previous != null) {
+            if (previous.hasThreadScope()) {
+                return previous;
+            }
+            long now = System.currentTimeMillis();
+            if (now >= nextSweep) {
+                nextSweep = now + RetiredSweepMillis;
+                if (previous.disposeFinishedThreads() == 0) {
+                    synchronized (this) {
+                        if (retired == previous) {
+                            retired = null;
+                        } else {
+                            // close() got to it first.
+                            previous = null;
+                        }
+                    }
+                    if (previous != null) {
+                        previous.dispose();
+                    }
+                }
+            }
         }
+        RhinoRuntime current = runtime;
+        if (current == null) {
+            throw new IllegalStateException("js code not loaded.");
+        }
+        return current;
     }
 
-    public Object callFunction(Scriptable scope, String functionName, Object[] functionParams) throws Exception {
-        Function function = (Function) scope.get(functionName, scope);
-        if (function == null) {
+    public Object callFunction(Context cx, Scriptable scope, String functionName, Object[] functionParams) throws Exception {
+        Object function = ScriptableObject.getProperty(scope, functionName);
+        if (!(function instanceof Function)) {
             throw new Exception("function " + functionName + " not found.");
         }
-        return function.call(engine, scope, scope, functionParams);
+        return settle(cx, scope, ((Function) function).call(cx, scope, scope, functionParams));
+    }
+
+    /**
+     * Pump the event loop shim until a thenable result settles, any other result is returned as is.
+     */
+    Object settle(Context cx, Scriptable scope, Object result) {
+        if (!(result instanceof Scriptable) || !(ScriptableObject.getProperty((Scriptable) result, "then") instanceof Function)) {
+            return result;
+        }
+        Object await = ScriptableObject.getProperty(scope, "__burpCryptoAwait");
+        long awaitMillis = config.TimeoutMillis > 0 ? config.TimeoutMillis : DefaultAwaitMillis;
+        return ((Function) await).call(cx, scope, scope, new Object[]{result, awaitMillis});
     }
 
-    public String eval(String param) throws Exception {
-        Scriptable scope = this.loadJsCode(jsCode);
-        String result = callFunction(scope, methodName, new Object[]{param}).toString();
-        Context.exit();
-        return result;
+    public String eval(String methodName, String param) throws Exception {
+        RhinoRuntime current = runtimeForThread();
+        Context cx = current.contextFactory.enterContext();
+        try {
+            current.contextFactory.startBudget(cx, 1);
+            return callFunction(cx, current.getScope(cx), methodName, new Object[]{param}).toString();
+        } catch (RhinoContextFactory.BudgetExceeded ex) {
+            current.discardScope();
+            throw new TimeoutException(ex.getMessage());
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Override
+    public byte[] evalBytes(String methodName, byte[] param) throws Exception {
+        RhinoRuntime current = runtimeForThread();
+        Context cx = current.contextFactory.enterContext();
+        try {
+            current.contextFactory.startBudget(cx, 1);
+            Scriptable scope = current.getScope(cx);
+            return TypedArrays.unwrap(callFunction(cx, scope, methodName, new Object[]{TypedArrays.wrap(scope, param)}));
+        } catch (RhinoContextFactory.BudgetExceeded ex) {
+            current.discardScope();
+            throw new TimeoutException(ex.getMessage());
+        } finally {
+            Context.exit();
+        }
+    }
+
+    public List<String> evalBatch(String methodName, List<String> params) throws Exception {
+        RhinoRuntime current = runtimeForThread();
+        Context cx = current.contextFactory.enterContext();
+        try {
+            current.contextFactory.startBudget(cx, params.size());
+            Scriptable scope = current.getScope(cx);
+            ArrayList<String> results = new ArrayList<>(params.size());
+            if (ScriptableObject.getProperty(scope, methodName + BatchSuffix) instanceof Function) {
+                Scriptable input = cx.newArray(scope, params.toArray());
+                Object output = callFunction(cx, scope, methodName + BatchSuffix, new Object[]{input});
+                if (!(output instanceof Scriptable)) {
+                    throw new Exception("function " + methodName + BatchSuffix + " must return an array.");
+                }
+                Scriptable array = (Scriptable) output;
+                long length = ScriptRuntime.toUint32(ScriptableObject.getProperty(array, "length"));
+                for (int i = 0; i < length; i++) {
+                    results.add(ScriptableObject.getProperty(array, i).toString());
+                }
+            } else {
+                for (String param : params) {
+                    current.contextFactory.startBudget(cx, 1);
+                    results.add(callFunction(cx, scope, methodName, new Object[]{param}).toString());
+                }
+            }
+            return results;
+        } catch (RhinoContextFactory.BudgetExceeded ex) {
+            current.discardScope();
+            throw new TimeoutException(ex.getMessage());
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Override
+    public void close() {
+        RhinoRuntime current, previous;
+        synchronized (this) {
+            closed = true;
+            current = runtime;
+            previous = retired;
+            runtime = null;
+            retired = null;
+        }
+        if (current != null) {
+            current.dispose();
+        }
+        if (previous != null) {
+            previous.dispose();
+        }
     }
 
 }
@@ -0,0 +1,194 @@
+package burp.execjs.engine;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.debug.DebugFrame;
+import org.mozilla.javascript.debug.DebuggableScript;
+import org.mozilla.javascript.debug.Debugger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time and call counts per js function and per line, collected through Rhino's debugger hooks.
+ * Rhino only calls the hooks from the interpreter, so a profiled runtime never switches to compiled classes.
+ */
+public class RhinoProfiler implements Debugger {
+    private final Map<DebuggableScript, Stats> functions = new ConcurrentHashMap<>();
+    private final Map<String, Stats> lines = new ConcurrentHashMap<>();
+    private final ThreadLocal<ArrayDeque<Frame>> stacks = ThreadLocal.withInitial(ArrayDeque::new);
+    // how many times each function and line is open on the thread's stack, recursion adds to total time only once.
+    private final ThreadLocal<Map<Stats, int[]>> depths = ThreadLocal.withInitial(IdentityHashMap::new);
+
+    /**
+     * Counters of one function or line. Self time leaves out the time spent in callees.
+     */
+    public static class Stats {
+        public final String name;
+        public final String location;
+        final LongAdder calls = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAdder selfNanos = new LongAdder();
+
+        Stats(String name, String location) {
+            this.name = name;
+            this.location = location;
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public double getTotalMillis() {
+            return totalNanos.sum() / 1e6;
+        }
+
+        public double getSelfMillis() {
+            return selfNanos.sum() / 1e6;
+        }
+    }
+
+    @Override
+    public void handleCompilationDone(Context cx, DebuggableScript fnOrScript, String source) {
+    }
+
+    @Override
+    public DebugFrame getFrame(Context cx, DebuggableScript fnOrScript) {
+        return new Frame(functions.computeIfAbsent(fnOrScript, RhinoProfiler::describe), fnOrScript.getSourceName());
+    }
+
+    private static Stats describe(DebuggableScript script) {
+        String name = script.isTopLevel() ? "(top level)" : script.getFunctionName();
+        int firstLine = Integer.MAX_VALUE;
+        for (int line : script.getLineNumbers()) {
+            firstLine = Math.min(firstLine, line);
+        }
+        return new Stats(name == null || name.isEmpty() ? "(anonymous)" : name,
+                script.getSourceName() + (firstLine == Integer.MAX_VALUE ? "" : ":" + firstLine));
+    }
+
+    /**
+     * Functions sorted by self time, the most expensive first.
+     */
+    public List<Stats> getFunctions() {
+        return sorted(functions.values());
+    }
+
+    /**
+     * Lines sorted by self time, the most expensive first.
+     */
+    public List<Stats> getLines() {
+        return sorted(lines.values());
+    }
+
+    private static List<Stats> sorted(Iterable<Stats> values) {
+        ArrayList<Stats> result = new ArrayList<>();
+        for (Stats stats : values) {
+            if (stats.getCalls() > 0) {
+                result.add(stats);
+            }
+        }
+        result.sort(Comparator.comparingLong((Stats stats) -> stats.selfNanos.sum()).reversed());
+        return result;
+    }
+
+    private void open(Stats stats) {
+        depths.get().computeIfAbsent(stats, key -> new int[1])[0]++;
+    }
+
+    /**
+     * @return whether this closed the outermost of its recursive calls.
+     */
+    private boolean close(Stats stats) {
+        Map<Stats, int[]> open = depths.get();
+        int[] depth = open.get(stats);
+        if (depth == null || --depth[0] <= 0) {
+            open.remove(stats);
+            return true;
+        }
+        return false;
+    }
+
+    public void reset() {
+        functions.clear();
+        lines.clear();
+    }
+
+    private class Frame implements DebugFrame {
+        final Stats function;
+        final String sourceName;
+        long entered;
+        long childNanos;
+        Stats line;
+        long lineStarted;
+        long lineChildNanos;
+
+        Frame(Stats function, String sourceName) {
+            this.function = function;
+            this.sourceName = sourceName;
+        }
+
+        @Override
+        public void onEnter(Context cx, Scriptable activation, Scriptable thisObj, Object[] args) {
+            stacks.get().push(this);
+            open(function);
+            entered = System.nanoTime();
+        }
+
+        @Override
+        public void onLineChange(Context cx, int lineNumber) {
+            long now = System.nanoTime();
+            closeLine(now);
+            String location = sourceName + ":" + lineNumber;
+            // minified code puts many functions on one line, so lines are counted per function.
+            line = lines.computeIfAbsent(function.name + "@" + location, key -> new Stats(function.name, location));
+            line.calls.increment();
+            open(line);
+            lineStarted = now;
+            lineChildNanos = 0;
+        }
+
+        private void closeLine(long now) {
+            if (line != null) {
+                if (close(line)) {
+                    line.totalNanos.add(now - lineStarted);
+                }
+                line.selfNanos.add(now - lineStarted - lineChildNanos);
+                line = null;
+            }
+        }
+
+        @Override
+        public void onExceptionThrown(Context cx, Throwable ex) {
+        }
+
+        @Override
+        public void onExit(Context cx, boolean byThrow, Object resultOrException) {
+            long now = System.nanoTime();
+            closeLine(now);
+            long total = now - entered;
+            function.calls.increment();
+            if (close(function)) {
+                function.totalNanos.add(total);
+            }
+            function.selfNanos.add(total - childNanos);
+            ArrayDeque<Frame> stack = stacks.get();
+            stack.poll();
+            Frame caller = stack.peek();
+            if (caller != null) {
+                caller.childNanos += total;
+                caller.lineChildNanos += total;
+            }
+        }
+
+        @Override
+        public void onDebuggerStatement(Context cx) {
+        }
+    }
+}
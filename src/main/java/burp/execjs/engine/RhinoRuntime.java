@@ -0,0 +1,339 @@
+package burp.execjs.engine;
+
+import burp.execjs.IJsEngine;
+import burp.execjs.JsConfig;
+import burp.utils.EventLoop;
+import burp.utils.HttpUtils;
+import burp.utils.NativeCrypto;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeJavaPackage;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.xml.XMLObject;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled script together with the scopes it has been run in.
+ * Immutable once built, so an engine can swap one runtime for another atomically.
+ */
+public class RhinoRuntime {
+    public static final int Interpreted = -1;
+    public static final int FullyOptimized = 9;
+
+    final Script script;
+    final int optimizationLevel;
+    final boolean sharedScope;
+    final boolean nativeCryptoJs;
+    final boolean webCrypto;
+    final int languageVersion;
+    final RhinoContextFactory contextFactory;
+    final List<String> includes;
+    final String initMethodName;
+    final String initParams;
+    final String disposeMethodName;
+    final long awaitMillis;
+    private Scriptable topScope;
+    private final ThreadLocal<Scriptable> threadScopes = new ThreadLocal<>();
+    // per thread scopes with their threads, dropped (and disposed when there is a dispose function) once the thread is gone.
+    private final List<OwnedScope> ownedScopes = new ArrayList<>();
+
+    /**
+     * Compile {@code jsCode} at the given optimization level and run its top level once.
+     * In shared scope mode that first scope is deep sealed and shared by every thread, each call getting a scope
+     * of its own on top of it, otherwise each Intruder thread gets its own copy the first time it calls in.
+     */
+    public RhinoRuntime(String jsCode, int optimizationLevel, JsConfig config) throws Exception {
+        this(jsCode, optimizationLevel, config, null);
+    }
+
+    /**
+     * @param profiler collects timings of every call when not null, {@code optimizationLevel} must be Interpreted then.
+     */
+    public RhinoRuntime(String jsCode, int optimizationLevel, JsConfig config, RhinoProfiler profiler) throws Exception {
+        this.optimizationLevel = optimizationLevel;
+        this.sharedScope = config.SharedScope;
+        this.nativeCryptoJs = config.NativeCryptoJs;
+        this.webCrypto = config.WebCrypto;
+        this.includes = config.Includes;
+        this.initMethodName = config.InitMethodName;
+        this.initParams = config.InitParams;
+        this.disposeMethodName = config.DisposeMethodName;
+        this.awaitMillis = config.TimeoutMillis > 0 ? config.TimeoutMillis : IJsEngine.DefaultAwaitMillis;
+        this.languageVersion = languageVersion(config);
+        this.contextFactory = new RhinoContextFactory(config.InstructionBudget, config.TimeoutMillis, profiler, config.SharedScope);
+        Context cx = contextFactory.enterContext();
+        try {
+            contextFactory.startBudget(cx, 1);
+            cx.setOptimizationLevel(optimizationLevel);
+            cx.setLanguageVersion(languageVersion);
+            // the interpreter's bytecode is cheap to produce, only JVM classes are worth caching on disk.
+            script = optimizationLevel == Interpreted
+                    ? cx.compileString(jsCode, RhinoEngine.class.getSimpleName(), 1, null)
+                    : RhinoScriptCache.compile(cx, jsCode, RhinoEngine.class.getSimpleName());
+            Scriptable scope = initScope(cx);
+            if (sharedScope) {
+                sealScope(scope);
+                topScope = scope;
+            } else {
+                threadScopes.set(scope);
+                track(scope, true);
+            }
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static int languageVersion(JsConfig config) {
+        // typed arrays, which WebCrypto and byte mode work on, are only defined from ES6 on.
+        return config.WebCrypto || config.ByteMode ? Context.VERSION_ES6 : Context.VERSION_DEFAULT;
+    }
+
+    /**
+     * Whether the compiled classes of {@code jsCode} under {@code config} are in the disk cache.
+     */
+    public static boolean isCached(String jsCode, int optimizationLevel, JsConfig config) {
+        Context cx = new RhinoContextFactory(config.InstructionBudget, config.TimeoutMillis).enterContext();
+        try {
+            cx.setOptimizationLevel(optimizationLevel);
+            cx.setLanguageVersion(languageVersion(config));
+            return RhinoScriptCache.contains(RhinoScriptCache.key(cx, jsCode));
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Build a fresh scope: shims, includes, the script's top level and its init function. None of it counts
+     * against the budget of the payload that happens to trigger it, a large bundle would never get past it otherwise.
+     */
+    private Scriptable initScope(Context cx) throws Exception {
+        return contextFactory.unbudgeted(cx, () -> buildScope(cx));
+    }
+
+    private Scriptable buildScope(Context cx) throws Exception {
+        Scriptable scope = cx.initStandardObjects();
+        ScriptableObject.defineClass(scope, HttpUtils.class);
+        ScriptableObject.defineClass(scope, EventLoop.class);
+        // one instance in place of the class, so host objects can find the loop the shim runs on.
+        ScriptableObject.defineProperty(scope, "EventLoop", cx.newObject(scope, "EventLoop"), ScriptableObject.DONTENUM);
+        BundledScripts.getScript(cx, BundledScripts.EventLoop).exec(cx, scope);
+        if (nativeCryptoJs || webCrypto) {
+            ScriptableObject.defineClass(scope, NativeCrypto.class);
+        }
+        if (webCrypto) {
+            BundledScripts.getScript(cx, BundledScripts.WebCrypto).exec(cx, scope);
+        }
+        for (String include : includes) {
+            BundledScripts.getScript(cx, BundledScripts.Snippets + include).exec(cx, scope);
+        }
+        script.exec(cx, scope);
+        if (nativeCryptoJs) {
+            BundledScripts.getScript(cx, BundledScripts.CryptoJsNative).exec(cx, scope);
+        }
+        if (!isEmpty(initMethodName)) {
+            Object params = isEmpty(initParams) ? Undefined.instance : ((Function) ScriptableObject.getProperty(
+                    (Scriptable) ScriptableObject.getProperty(scope, "JSON"), "parse")).call(cx, scope, scope, new Object[]{initParams});
+            callLifecycle(cx, scope, initMethodName, new Object[]{params});
+        }
+        return scope;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    /**
+     * Call a lifecycle function and wait for it when it returns a promise.
+     */
+    private Object callLifecycle(Context cx, Scriptable scope, String name, Object[] args) throws Exception {
+        Object function = ScriptableObject.getProperty(scope, name);
+        if (!(function instanceof Function)) {
+            throw new Exception("function " + name + " not found.");
+        }
+        Object result = ((Function) function).call(cx, scope, scope, args);
+        Object await = ScriptableObject.getProperty(scope, "__burpCryptoAwait");
+        return ((Function) await).call(cx, scope, scope, new Object[]{result, awaitMillis});
+    }
+
+    private void track(Scriptable scope, boolean loading) {
+        synchronized (ownedScopes) {
+            ownedScopes.add(new OwnedScope(Thread.currentThread(), scope, loading));
+        }
+    }
+
+    /**
+     * Drop the scopes of threads that are gone and run the dispose function in them, Intruder starts new threads
+     * for every attack.
+     *
+     * @return how many threads still have a scope here, not counting the thread that loaded the script: that is
+     * Burp's UI or a loader thread, which never ends.
+     */
+    private int disposeOrphans(Context cx) {
+        ArrayList<Scriptable> orphans = new ArrayList<>();
+        int remaining = 0;
+        synchronized (ownedScopes) {
+            ownedScopes.removeIf(owned -> !owned.owner.isAlive() && orphans.add(owned.scope));
+            for (OwnedScope owned : ownedScopes) {
+                if (!owned.loading) {
+                    remaining++;
+                }
+            }
+        }
+        for (Scriptable scope : orphans) {
+            disposeScope(cx, scope);
+        }
+        return remaining;
+    }
+
+    /**
+     * Whether the calling thread has its own scope here, its script state lives in it.
+     */
+    public boolean hasThreadScope() {
+        return !sharedScope && threadScopes.get() != null;
+    }
+
+    /**
+     * Drop the scopes of finished threads of a runtime that has been replaced.
+     *
+     * @return how many threads still use this runtime.
+     */
+    public int disposeFinishedThreads() {
+        Context cx = contextFactory.enterContext();
+        try {
+            cx.setLanguageVersion(languageVersion);
+            return disposeOrphans(cx);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private void disposeScope(Context cx, Scriptable scope) {
+        if (isEmpty(disposeMethodName)) {
+            return;
+        }
+        try {
+            contextFactory.unbudgeted(cx, () -> callLifecycle(cx, scope, disposeMethodName, new Object[0]));
+        } catch (Exception ex) {
+            // nothing is waiting for the scope any more, a failing dispose has no one to report to.
+        }
+    }
+
+    /**
+     * Run the dispose function in every scope this runtime still holds, called when the engine is closed.
+     */
+    public void dispose() {
+        if (isEmpty(disposeMethodName)) {
+            synchronized (ownedScopes) {
+                ownedScopes.clear();
+            }
+            return;
+        }
+        Context cx = contextFactory.enterContext();
+        try {
+            cx.setLanguageVersion(languageVersion);
+            if (sharedScope) {
+                disposeScope(cx, topScope);
+            }
+            ArrayList<OwnedScope> scopes;
+            synchronized (ownedScopes) {
+                scopes = new ArrayList<>(ownedScopes);
+                ownedScopes.clear();
+            }
+            for (OwnedScope owned : scopes) {
+                disposeScope(cx, owned.scope);
+            }
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Seal everything reachable from the scope: library objects, prototypes, functions and the closures they were
+     * defined in. Calls can then share it without racing, a script writing to shared state fails right away with
+     * "Cannot modify a property of a sealed object" instead of corrupting other threads' calls.
+     */
+    private static void sealScope(Scriptable scope) {
+        Map<Object, Boolean> seen = new IdentityHashMap<>();
+        List<Object> pending = new ArrayList<>();
+        pending.add(scope);
+        while (!pending.isEmpty()) {
+            Object value = pending.remove(pending.size() - 1);
+            // Java packages load classes into themselves on first use and synchronize that, they stay as they are.
+            if (!(value instanceof ScriptableObject) || value instanceof NativeJavaPackage || seen.put(value, Boolean.TRUE) != null) {
+                continue;
+            }
+            ScriptableObject object = (ScriptableObject) value;
+            // E4X objects treat every name as an XML query, they hold no script state to walk into.
+            Object[] ids = object instanceof XMLObject ? new Object[0] : object.getAllIds();
+            for (Object id : ids) {
+                String name = id instanceof Number ? null : id.toString();
+                int index = id instanceof Number ? ((Number) id).intValue() : 0;
+                Object getter = object.getGetterOrSetter(name, index, false);
+                if (getter != Undefined.instance) {
+                    // accessors are walked into, not called.
+                    pending.add(getter);
+                    pending.add(object.getGetterOrSetter(name, index, true));
+                } else {
+                    pending.add(name == null ? object.get(index, object) : object.get(name, object));
+                }
+            }
+            pending.add(object.getPrototype());
+            pending.add(object.getParentScope());
+            object.sealObject();
+        }
+    }
+
+    /**
+     * Forget the calling thread's scope, after a call was aborted half way its globals cannot be trusted.
+     * The thread's event loop queues are dropped too, the abort skipped the shim's own clean up.
+     */
+    public void discardScope() {
+        Scriptable scope = threadScopes.get();
+        EventLoop loop = EventLoop.of(sharedScope ? topScope : scope);
+        if (loop != null) {
+            loop.clear();
+        }
+        threadScopes.remove();
+        synchronized (ownedScopes) {
+            ownedScopes.removeIf(owned -> owned.scope == scope);
+        }
+    }
+
+    public Scriptable getScope(Context cx) throws Exception {
+        cx.setLanguageVersion(languageVersion);
+        if (sharedScope) {
+            // with dynamic scope, globals the call reads come from here and then the shared scope, globals it writes land here.
+            Scriptable callScope = cx.newObject(topScope);
+            callScope.setPrototype(topScope);
+            callScope.setParentScope(null);
+            return callScope;
+        }
+        Scriptable scope = threadScopes.get();
+        if (scope == null) {
+            disposeOrphans(cx);
+            scope = initScope(cx);
+            threadScopes.set(scope);
+            track(scope, false);
+        }
+        return scope;
+    }
+
+    private static class OwnedScope {
+        final Thread owner;
+        final Scriptable scope;
+        final boolean loading;
+
+        OwnedScope(Thread owner, Scriptable scope, boolean loading) {
+            this.owner = owner;
+            this.scope = scope;
+            this.loading = loading;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package burp.execjs.engine;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.GeneratedClassLoader;
+import org.mozilla.javascript.ImplementationVersion;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+import org.mozilla.javascript.optimizer.Codegen;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiled class files of user scripts, kept next to BurpCrypto.ldb so a restart or a re-added processor
+ * defines the classes again instead of parsing and compiling the source. Entries are keyed by everything
+ * that changes the generated code, the least recently used ones are evicted past {@link #MaxCacheBytes}.
+ */
+public class RhinoScriptCache {
+    private static final long MaxCacheBytes = 64L * 1024 * 1024;
+    private static final Path CacheRoot = new File("BurpCrypto.jscache").toPath().toAbsolutePath().normalize();
+    private static final String RhinoVersion = GetRhinoVersion();
+
+    /**
+     * ImplementationVersion reads the jar manifest, which the shaded jar drops, so hash the code generator instead.
+     */
+    private static String GetRhinoVersion() {
+        String version = ImplementationVersion.get();
+        if (version != null) {
+            return version;
+        }
+        try (InputStream in = Codegen.class.getResourceAsStream("Codegen.class")) {
+            return in == null ? "unknown" : DigestUtils.sha256Hex(in);
+        } catch (IOException ex) {
+            return "unknown";
+        }
+    }
+
+    /**
+     * @param cx the context the script will be compiled and run with, its settings are part of the key.
+     */
+    public static String key(Context cx, String jsCode) {
+        return DigestUtils.sha256Hex(RhinoVersion + "\n" + cx.getOptimizationLevel() + "\n" + cx.getLanguageVersion() + "\n" +
+                (cx.getInstructionObserverThreshold() > 0) + "\n" + jsCode);
+    }
+
+    public static boolean contains(String key) {
+        return Files.isRegularFile(CacheRoot.resolve(key));
+    }
+
+    /**
+     * Load the script from the cache or compile it into the cache. Never throws for cache trouble, an unusable
+     * cache only costs the compile.
+     */
+    public static Script compile(Context cx, String jsCode, String sourceName) {
+        String key = key(cx, jsCode);
+        Path file = CacheRoot.resolve(key);
+        List<Object> classes = null;
+        if (Files.isRegularFile(file)) {
+            try {
+                classes = read(file);
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException ex) {
+                classes = null;
+            }
+        }
+        if (classes == null) {
+            CompilerEnvirons environs = new CompilerEnvirons();
+            environs.initFromContext(cx);
+            Object[] compiled = new ClassCompiler(environs).compileToClassFiles(jsCode, sourceName, 1,
+                    "burp.execjs.cached.Script" + key.substring(0, 16));
+            classes = new ArrayList<>();
+            for (Object item : compiled) {
+                classes.add(item);
+            }
+            try {
+                write(file, classes);
+            } catch (IOException ex) {
+                // read-only working directory or a full disk, carry on uncached.
+            }
+        }
+        try {
+            return define(cx, classes);
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+            }
+            throw new IllegalStateException("cached script " + key + " could not be loaded.", ex);
+        }
+    }
+
+    private static Script define(Context cx, List<Object> classes) throws ReflectiveOperationException {
+        GeneratedClassLoader loader = cx.createClassLoader(cx.getApplicationClassLoader());
+        Class<?> main = null;
+        for (int i = 0; i < classes.size(); i += 2) {
+            Class<?> defined = loader.defineClass((String) classes.get(i), (byte[]) classes.get(i + 1));
+            if (main == null) {
+                main = defined;
+            }
+        }
+        loader.linkClass(main);
+        return (Script) main.getDeclaredConstructor().newInstance();
+    }
+
+    private static List<Object> read(Path file) throws IOException {
+        ArrayList<Object> classes = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                classes.add(in.readUTF());
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classes.add(bytes);
+            }
+        }
+        return classes;
+    }
+
+    private static synchronized void write(Path file, List<Object> classes) throws IOException {
+        Files.createDirectories(CacheRoot);
+        Path temp = Files.createTempFile(CacheRoot, "script", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+            out.writeInt(classes.size() / 2);
+            for (int i = 0; i < classes.size(); i += 2) {
+                out.writeUTF((String) classes.get(i));
+                byte[] bytes = (byte[]) classes.get(i + 1);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        evict();
+    }
+
+    private static void evict() throws IOException {
+        List<Path> entries;
+        try (Stream<Path> files = Files.list(CacheRoot)) {
+            entries = files.filter(path -> !path.getFileName().toString().endsWith(".tmp"))
+                    .sorted(Comparator.comparing(RhinoScriptCache::lastModified).reversed())
+                    .collect(Collectors.toList());
+        }
+        long total = 0;
+        for (Path entry : entries) {
+            total += Files.size(entry);
+            if (total > MaxCacheBytes) {
+                Files.deleteIfExists(entry);
+            }
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+}
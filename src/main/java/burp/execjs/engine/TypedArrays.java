@@ -0,0 +1,78 @@
+package burp.execjs.engine;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.typedarrays.NativeArrayBuffer;
+import org.mozilla.javascript.typedarrays.NativeArrayBufferView;
+import org.mozilla.javascript.typedarrays.NativeUint8Array;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * byte[] to and from Rhino typed arrays without copying where Rhino allows it.
+ * Needs a scope initialised at language version ES6, the typed array constructors do not exist before.
+ */
+public class TypedArrays {
+    // NativeArrayBuffer has no constructor taking an existing array, so the buffer is swapped in by reflection.
+    private static final Field BufferField = GetBufferField();
+
+    private static Field GetBufferField() {
+        try {
+            Field field = NativeArrayBuffer.class.getDeclaredField("buffer");
+            field.setAccessible(true);
+            return field;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * A Uint8Array over {@code bytes} itself, or over a copy when the buffer field is out of reach.
+     */
+    public static Scriptable wrap(Scriptable scope, byte[] bytes) {
+        NativeArrayBuffer buffer = null;
+        if (BufferField != null) {
+            try {
+                buffer = new NativeArrayBuffer();
+                BufferField.set(buffer, bytes);
+            } catch (IllegalAccessException ex) {
+                buffer = null;
+            }
+        }
+        if (buffer == null) {
+            buffer = new NativeArrayBuffer(bytes.length);
+            System.arraycopy(bytes, 0, buffer.getBuffer(), 0, bytes.length);
+        }
+        initObject(buffer, scope, "ArrayBuffer");
+        NativeUint8Array array = new NativeUint8Array(buffer, 0, bytes.length);
+        initObject(array, scope, "Uint8Array");
+        return array;
+    }
+
+    private static void initObject(ScriptableObject object, Scriptable scope, String className) {
+        object.setParentScope(ScriptableObject.getTopLevelScope(scope));
+        object.setPrototype(ScriptableObject.getClassPrototype(scope, className));
+    }
+
+    /**
+     * ArrayBuffers and views covering a whole buffer hand out the backing array, other views are copied
+     * and anything else is taken as a string and UTF-8 encoded.
+     */
+    public static byte[] unwrap(Object value) {
+        if (value instanceof NativeArrayBuffer) {
+            return ((NativeArrayBuffer) value).getBuffer();
+        }
+        if (value instanceof NativeArrayBufferView) {
+            NativeArrayBufferView view = (NativeArrayBufferView) value;
+            byte[] backing = view.getBuffer().getBuffer();
+            if (view.getByteOffset() == 0 && view.getByteLength() == backing.length) {
+                return backing;
+            }
+            return Arrays.copyOfRange(backing, view.getByteOffset(), view.getByteOffset() + view.getByteLength());
+        }
+        return Context.toString(value).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,425 @@
+package burp.execjs.engine;
+
+import burp.BurpExtender;
+import burp.execjs.IJsEngine;
+import burp.execjs.JsConfig;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the script in child JVMs (see JsWorker), keeping its heap and GC pauses out of Burp. Every call goes to the
+ * worker with the fewest requests in flight, requests are pipelined so one worker keeps all of its threads busy.
+ * Workers are recycled after a number of calls or above a heap size, and replaced when they die. Replacements start
+ * on a thread of their own and only take over once they have loaded the script, calls never wait for a JVM to start
+ * unless no worker at all is left.
+ */
+public class WorkerEngine implements IJsEngine {
+    // how long a call waits past the script's own timeout before the worker is considered stuck and killed.
+    private static final long StuckGraceMillis = 5000;
+    // how long starting a JVM and loading the script may take.
+    private static final long LoadTimeoutMillis = 60000;
+
+    private JsConfig config;
+    private BurpExtender parent;
+    private Worker[] workers;
+    // replacements still loading the script, killed when the engine is closed.
+    private final List<Worker> starting = new ArrayList<>();
+    private int threadsPerWorker;
+    private volatile boolean closed;
+
+    @Override
+    public void setParent(BurpExtender parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Start every worker and wait until each has loaded the script, so errors in it are reported right away.
+     */
+    @Override
+    public void setConfig(JsConfig config) throws Exception {
+        this.config = config;
+        this.threadsPerWorker = Math.max(1, Runtime.getRuntime().availableProcessors() / config.Workers);
+        this.workers = new Worker[config.Workers];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
+        }
+        try {
+            for (Worker worker : workers) {
+                awaitLoad(worker);
+            }
+        } catch (Exception ex) {
+            close();
+            throw ex;
+        }
+        if (parent != null) {
+            parent.stdout.println(String.format("started %d js worker process(es) with %d thread(s) and %d MB of heap each.",
+                    workers.length, threadsPerWorker, config.WorkerHeapMb));
+        }
+    }
+
+    @Override
+    public String eval(String methodName, String param) throws Exception {
+        DataInputStream response = call(WorkerProtocol.Eval, 1, request -> {
+            WorkerProtocol.writeString(request, methodName);
+            WorkerProtocol.writeString(request, param);
+        });
+        return WorkerProtocol.readString(response);
+    }
+
+    @Override
+    public List<String> evalBatch(String methodName, List<String> params) throws Exception {
+        DataInputStream response = call(WorkerProtocol.EvalBatch, params.size(), request -> {
+            WorkerProtocol.writeString(request, methodName);
+            WorkerProtocol.writeStrings(request, params);
+        });
+        return WorkerProtocol.readStrings(response);
+    }
+
+    @Override
+    public byte[] evalBytes(String methodName, byte[] param) throws Exception {
+        DataInputStream response = call(WorkerProtocol.EvalBytes, 1, request -> {
+            WorkerProtocol.writeString(request, methodName);
+            WorkerProtocol.writeBytes(request, param);
+        });
+        return WorkerProtocol.readBytes(response);
+    }
+
+    private interface RequestWriter {
+        void write(DataOutputStream request) throws IOException;
+    }
+
+    private DataInputStream call(byte op, int payloads, RequestWriter writer) throws Exception {
+        if (closed) {
+            throw new IllegalStateException("js code not loaded.");
+        }
+        Worker worker = pick();
+        CompletableFuture<DataInputStream> response = worker.send(op, writer);
+        try {
+            if (config.TimeoutMillis > 0) {
+                return response.get(config.TimeoutMillis * payloads + StuckGraceMillis, TimeUnit.MILLISECONDS);
+            }
+            return response.get();
+        } catch (TimeoutException ex) {
+            // the script's own timeout did not fire, the worker is stuck and its other requests are lost with it.
+            worker.process.destroyForcibly();
+            throw new TimeoutException("js worker " + worker.index + " did not answer in time and has been killed.");
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+        } finally {
+            worker.finished();
+        }
+    }
+
+    private void awaitLoad(Worker worker) throws Exception {
+        try {
+            worker.loaded.get(LoadTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            throw new Exception("js worker failed to load the script: " + ex.getCause().getMessage(), ex.getCause());
+        } catch (TimeoutException ex) {
+            worker.process.destroyForcibly();
+            throw new TimeoutException("js worker " + worker.index + " did not load the script within " + LoadTimeoutMillis / 1000 + " s.");
+        }
+    }
+
+    /**
+     * The live worker with the fewest requests in flight. Dead workers get a replacement started, the call only
+     * waits for one when no worker is left alive.
+     */
+    private synchronized Worker pick() throws Exception {
+        long deadline = System.currentTimeMillis() + LoadTimeoutMillis;
+        while (true) {
+            if (closed) {
+                throw new IllegalStateException("js code not loaded.");
+            }
+            Worker best = null;
+            for (Worker worker : workers) {
+                if (!worker.isAlive()) {
+                    if (!worker.replacing) {
+                        worker.replacing = true;
+                        spawn(worker);
+                    }
+                } else if (best == null || worker.inFlight.get() < best.inFlight.get()) {
+                    best = worker;
+                }
+            }
+            if (best != null) {
+                best.inFlight.incrementAndGet();
+                return best;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new TimeoutException("no js worker could be restarted within " + LoadTimeoutMillis / 1000 + " s.");
+            }
+            wait(remaining);
+        }
+    }
+
+    /**
+     * Start a fresh worker for one that reached its call or heap limit. The old one keeps serving until the new one
+     * has loaded the script, then exits once its requests are answered.
+     */
+    private synchronized void recycle(Worker worker) {
+        if (closed || workers[worker.index] != worker || worker.replacing) {
+            return;
+        }
+        worker.replacing = true;
+        spawn(worker);
+    }
+
+    /**
+     * Start the replacement of {@code stale} outside of the engine's lock, it takes the slot once it has loaded.
+     */
+    private void spawn(Worker stale) {
+        daemon(() -> {
+            Worker next = null;
+            Exception failure = null;
+            try {
+                next = new Worker(stale.index);
+                synchronized (this) {
+                    starting.add(next);
+                    if (closed) {
+                        next.process.destroyForcibly();
+                    }
+                }
+                awaitLoad(next);
+            } catch (Exception ex) {
+                failure = ex;
+            }
+            replace(stale, next, failure);
+        }, "BurpCrypto-JsWorker-Start-" + stale.index);
+    }
+
+    private synchronized void replace(Worker worker, Worker next, Exception loadFailure) {
+        starting.remove(next);
+        if (closed || workers[worker.index] != worker || loadFailure != null) {
+            if (loadFailure != null) {
+                if (parent != null) {
+                    parent.stderr.println("js worker " + worker.index + " could not be replaced: " + loadFailure.getMessage());
+                }
+                // a dead worker is tried again by the next call, a live one keeps serving.
+                worker.replacing = worker.isAlive();
+            }
+            if (next != null) {
+                next.retire();
+            }
+            notifyAll();
+            return;
+        }
+        workers[worker.index] = next;
+        worker.retire();
+        notifyAll();
+    }
+
+    /**
+     * The extension's own jar, plus the JVM's class path when running from a build directory.
+     */
+    private static String classPath() throws IOException {
+        LinkedHashSet<String> entries = new LinkedHashSet<>();
+        try {
+            File location = Paths.get(JsWorker.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toFile();
+            entries.add(location.getPath());
+            if (location.isDirectory()) {
+                entries.add(System.getProperty("java.class.path"));
+            }
+        } catch (Exception ex) {
+            throw new IOException("cannot locate the extension jar for js workers: " + ex.getMessage());
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+        for (Worker worker : starting) {
+            // nothing has been sent to it but the script, there is nothing to wait for.
+            worker.process.destroyForcibly();
+        }
+        if (workers != null) {
+            for (Worker worker : workers) {
+                if (worker != null) {
+                    worker.retire();
+                }
+            }
+        }
+    }
+
+    private class Worker {
+        final int index;
+        final Process process;
+        final DataOutputStream requests;
+        final Map<Integer, CompletableFuture<DataInputStream>> pending = new ConcurrentHashMap<>();
+        final AtomicInteger ids = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicLong calls = new AtomicLong();
+        final CompletableFuture<DataInputStream> loaded;
+        final AtomicBoolean exiting = new AtomicBoolean();
+        volatile int heapMb;
+        volatile String lastError = "";
+        volatile boolean retiring;
+        volatile boolean gone;
+        boolean replacing;
+
+        Worker(int index) throws IOException {
+            this.index = index;
+            ArrayList<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            command.add("-Xmx" + config.WorkerHeapMb + "m");
+            command.add("-Djava.awt.headless=true");
+            command.add("-cp");
+            command.add(classPath());
+            command.add(JsWorker.class.getName());
+            command.add(String.valueOf(threadsPerWorker));
+            process = new ProcessBuilder(command).start();
+            requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            daemon(this::readResponses, "BurpCrypto-JsWorker-" + index);
+            daemon(this::readErrors, "BurpCrypto-JsWorker-Log-" + index);
+            loaded = send(WorkerProtocol.Load, request -> WorkerProtocol.writeConfig(request, config));
+        }
+
+        boolean isAlive() {
+            return !gone && process.isAlive();
+        }
+
+        CompletableFuture<DataInputStream> send(byte op, RequestWriter writer) {
+            int id = ids.incrementAndGet();
+            CompletableFuture<DataInputStream> response = new CompletableFuture<>();
+            pending.put(id, response);
+            if (gone) {
+                // the reader already failed everything pending, this request would never be answered.
+                pending.remove(id);
+                response.completeExceptionally(exited());
+                return response;
+            }
+            try {
+                WorkerProtocol.Builder frame = new WorkerProtocol.Builder(id, op);
+                writer.write(frame.out);
+                synchronized (requests) {
+                    WorkerProtocol.writeFrame(requests, frame.toByteArray());
+                    requests.flush();
+                }
+            } catch (IOException ex) {
+                pending.remove(id);
+                response.completeExceptionally(exited());
+            }
+            return response;
+        }
+
+        /**
+         * Called when a call has its response, recycles the worker once it reached one of its limits.
+         */
+        void finished() {
+            inFlight.decrementAndGet();
+            long count = calls.incrementAndGet();
+            if ((config.WorkerRecycleCalls > 0 && count >= config.WorkerRecycleCalls) ||
+                    (config.WorkerRecycleHeapMb > 0 && heapMb >= config.WorkerRecycleHeapMb)) {
+                recycle(this);
+            }
+            if (retiring) {
+                closeWhenIdle();
+            }
+        }
+
+        private void readResponses() {
+            try {
+                DataInputStream in = new DataInputStream(process.getInputStream());
+                byte[] frame;
+                while ((frame = WorkerProtocol.readFrame(in)) != null) {
+                    DataInputStream response = new DataInputStream(new ByteArrayInputStream(frame));
+                    int id = response.readInt();
+                    byte status = response.readByte();
+                    heapMb = response.readInt();
+                    CompletableFuture<DataInputStream> future = pending.remove(id);
+                    if (future == null) {
+                        continue;
+                    }
+                    if (status == WorkerProtocol.Ok) {
+                        future.complete(response);
+                    } else {
+                        future.completeExceptionally(new Exception(WorkerProtocol.readString(response)));
+                    }
+                }
+            } catch (IOException ex) {
+                // treated like the end of the stream.
+            }
+            gone = true;
+            IOException exited = exited();
+            for (CompletableFuture<DataInputStream> future : pending.values()) {
+                future.completeExceptionally(exited);
+            }
+            pending.clear();
+        }
+
+        private IOException exited() {
+            return new IOException("js worker " + index + " exited" + (lastError.isEmpty() ? "." : ", its last output was: " + lastError));
+        }
+
+        private void readErrors() {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lastError = line;
+                    if (parent != null) {
+                        parent.stderr.println("[js worker " + index + "] " + line);
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        }
+
+        /**
+         * Take no new requests and let the worker exit, its dispose function runs once the requests in flight are answered.
+         */
+        void retire() {
+            retiring = true;
+            closeWhenIdle();
+        }
+
+        private void closeWhenIdle() {
+            if (inFlight.get() > 0 || !exiting.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                synchronized (requests) {
+                    requests.close();
+                }
+            } catch (IOException ignored) {
+            }
+            daemon(() -> {
+                try {
+                    if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                        process.destroyForcibly();
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            }, "BurpCrypto-JsWorker-Exit-" + index);
+        }
+    }
+
+    private static void daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
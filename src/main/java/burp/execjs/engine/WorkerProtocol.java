@@ -0,0 +1,147 @@
+package burp.execjs.engine;
+
+import burp.execjs.JsConfig;
+import burp.execjs.JsEngines;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Frames exchanged with a js worker process over its stdin and stdout. Every frame is an int length followed by
+ * that many bytes: the request id, an op (requests) or status (responses), then the op's fields. Strings and byte
+ * arrays are length prefixed too, so nothing needs escaping and requests can be pipelined freely.
+ * A response also carries the worker's used heap, which the parent uses to decide when to recycle it.
+ */
+class WorkerProtocol {
+    static final byte Load = 1;
+    static final byte Eval = 2;
+    static final byte EvalBatch = 3;
+    static final byte EvalBytes = 4;
+
+    static final byte Ok = 0;
+    static final byte Failed = 1;
+
+    static void writeFrame(DataOutputStream out, byte[] frame) throws IOException {
+        out.writeInt(frame.length);
+        out.write(frame);
+    }
+
+    /**
+     * @return the next frame, null once the other side closed the stream.
+     */
+    static byte[] readFrame(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException ex) {
+            return null;
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return frame;
+    }
+
+    /**
+     * A frame under construction, starting with its id and op or status.
+     */
+    static class Builder {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        Builder(int id, byte op) throws IOException {
+            out.writeInt(id);
+            out.writeByte(op);
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] value = readBytes(in);
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        ArrayList<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    /**
+     * Everything a worker needs to load the script itself, the worker options are left out since it runs in process.
+     */
+    static void writeConfig(DataOutputStream out, JsConfig config) throws IOException {
+        writeString(out, config.CryptoJsCode);
+        writeString(out, config.JsEngine.name());
+        out.writeBoolean(config.SharedScope);
+        out.writeBoolean(config.NativeCryptoJs);
+        out.writeBoolean(config.WebCrypto);
+        out.writeBoolean(config.ByteMode);
+        writeStrings(out, config.Includes);
+        out.writeLong(config.InstructionBudget);
+        out.writeLong(config.TimeoutMillis);
+        out.writeBoolean(config.LiteHtmlUnit);
+        writeString(out, config.InitMethodName);
+        writeString(out, config.InitParams);
+        writeString(out, config.DisposeMethodName);
+    }
+
+    static JsConfig readConfig(DataInputStream in) throws IOException {
+        JsConfig config = new JsConfig();
+        config.CryptoJsCode = readString(in);
+        config.JsEngine = JsEngines.valueOf(readString(in));
+        config.SharedScope = in.readBoolean();
+        config.NativeCryptoJs = in.readBoolean();
+        config.WebCrypto = in.readBoolean();
+        config.ByteMode = in.readBoolean();
+        config.Includes = readStrings(in);
+        config.InstructionBudget = in.readLong();
+        config.TimeoutMillis = in.readLong();
+        config.LiteHtmlUnit = in.readBoolean();
+        config.InitMethodName = readString(in);
+        config.InitParams = readString(in);
+        config.DisposeMethodName = readString(in);
+        return config;
+    }
+}
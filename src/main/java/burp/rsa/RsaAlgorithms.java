@@ -0,0 +1,9 @@
+package burp.rsa;
+
+public enum RsaAlgorithms {
+    PKCS1,
+    SecurityJs,
+    SecurityJs_Reversed,
+    JsEncrypt,
+    JsEncrypt_Long,
+}
@@ -5,7 +5,10 @@ import burp.utils.OutFormat;
 import java.math.BigInteger;
 
 public class RsaConfig {
+    public RsaAlgorithms Algorithms;
     public BigInteger Modulus;
     public BigInteger Exponent;
     public OutFormat OutFormat;
+    // encrypt the blocks of one long payload on the common pool.
+    public boolean ParallelChunks;
 }
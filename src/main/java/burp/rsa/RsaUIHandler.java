@@ -11,12 +11,14 @@ import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.ItemEvent;
 import java.math.BigInteger;
+import java.util.ArrayList;
 
 public class RsaUIHandler {
     private BurpExtender parent;
     private JPanel mainPanel;
-    private JComboBox<String> rsaPublicKeyFormatSelector, outFormatSelector;
+    private JComboBox<String> rsaAlgSelector, rsaPublicKeyFormatSelector, outFormatSelector;
     private JTextField modulusText, exponentText, x509Text;
+    private JCheckBox parallelChunksCheck;
     private JButton applyBtn, deleteBtn;
 
     public RsaUIHandler(BurpExtender parent) {
@@ -38,6 +40,7 @@ public class RsaUIHandler {
         label1.setFont(new Font("Nimbus", 1, 16));
         label1.setAlignmentX(0.0f);
 
+        final JPanel panel0 = UIUtil.GetXJPanel();
         final JPanel panel1 = UIUtil.GetXJPanel();
         final JPanel panel2 = UIUtil.GetYJPanel();
         final JPanel panel2_1 = UIUtil.GetXJPanel();
@@ -46,6 +49,11 @@ public class RsaUIHandler {
         final JPanel panel4 = UIUtil.GetXJPanel();
         final JPanel panel5 = UIUtil.GetXJPanel();
 
+        final JLabel label0 = new JLabel("RSA Algorithm: ");
+        rsaAlgSelector = new JComboBox(GetRsaAlgs());
+        rsaAlgSelector.setMaximumSize(rsaAlgSelector.getPreferredSize());
+        rsaAlgSelector.setSelectedIndex(0);
+
         final JLabel label2 = new JLabel("RSA Public Key Format: ");
         rsaPublicKeyFormatSelector = new JComboBox(Utils.GetPublicKeyFormats());
         rsaPublicKeyFormatSelector.setMaximumSize(rsaPublicKeyFormatSelector.getPreferredSize());
@@ -85,13 +93,17 @@ public class RsaUIHandler {
         outFormatSelector.setMaximumSize(outFormatSelector.getPreferredSize());
         outFormatSelector.setSelectedIndex(0);
 
+        parallelChunksCheck = new JCheckBox("Encrypt blocks of long payloads in parallel(SecurityJs always outputs spaced HEX)");
+
         applyBtn = new JButton("Add processor");
         applyBtn.setMaximumSize(applyBtn.getPreferredSize());
         applyBtn.addActionListener(e -> {
             PublicKeyFormat keyFormat = PublicKeyFormat.valueOf(rsaPublicKeyFormatSelector.getSelectedItem().toString());
             OutFormat outFormat = OutFormat.valueOf(outFormatSelector.getSelectedItem().toString());
             RsaConfig config = new RsaConfig();
+            config.Algorithms = RsaAlgorithms.valueOf(rsaAlgSelector.getSelectedItem().toString());
             config.OutFormat = outFormat;
+            config.ParallelChunks = parallelChunksCheck.isSelected();
             switch (keyFormat) {
                 case ModulusAndExponent:
                     try {
@@ -129,7 +141,17 @@ public class RsaUIHandler {
                 JOptionPane.showMessageDialog(mainPanel, "name empty!");
                 return;
             }
-            if (parent.RegIPProcessor(extName, new RsaIntruderPayloadProcessor(parent, extName, config)))
+            if (!parent.CheckIPProcessorName(extName)) {
+                return;
+            }
+            RsaIntruderPayloadProcessor processor;
+            try {
+                processor = new RsaIntruderPayloadProcessor(parent, extName, config);
+            } catch (IllegalStateException ex) {
+                JOptionPane.showMessageDialog(mainPanel, ex.getCause().getMessage());
+                return;
+            }
+            if (parent.RegIPProcessor(extName, processor))
                 JOptionPane.showMessageDialog(mainPanel, "Apply processor success!");
         });
 
@@ -147,6 +169,8 @@ public class RsaUIHandler {
             JOptionPane.showMessageDialog(mainPanel, "Remove success!");
         });
 
+        panel0.add(label0);
+        panel0.add(rsaAlgSelector);
         panel1.add(label2);
         panel1.add(rsaPublicKeyFormatSelector);
         panel2_1.add(label3);
@@ -160,10 +184,12 @@ public class RsaUIHandler {
         panel3.add(x509Text);
         panel4.add(label6);
         panel4.add(outFormatSelector);
+        panel4.add(parallelChunksCheck);
         panel5.add(applyBtn);
         panel5.add(deleteBtn);
 
         mainPanel.add(label1);
+        mainPanel.add(panel0);
         mainPanel.add(panel1);
         mainPanel.add(panel2);
         mainPanel.add(panel3);
@@ -171,4 +197,13 @@ public class RsaUIHandler {
         mainPanel.add(panel5);
         return mainPanel;
     }
+
+    private String[] GetRsaAlgs() {
+        ArrayList<String> algStrs = new ArrayList<String>();
+        RsaAlgorithms[] algs = RsaAlgorithms.values();
+        for (RsaAlgorithms alg : algs) {
+            algStrs.add(alg.name());
+        }
+        return algStrs.toArray(new String[algStrs.size()]);
+    }
 }
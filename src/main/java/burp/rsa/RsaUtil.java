@@ -1,31 +1,179 @@
 package burp.rsa;
 
 import burp.utils.Utils;
-import cn.hutool.crypto.asymmetric.AsymmetricCrypto;
-import cn.hutool.crypto.asymmetric.KeyType;
-import cn.hutool.crypto.asymmetric.RSA;
 
-import java.security.KeyFactory;
-import java.security.spec.RSAPublicKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
+/**
+ * RSA with the public key only, done with BigInteger.modPow so the front-end libraries are matched byte for byte:
+ * <ul>
+ * <li>PKCS1: PKCS#1 v1.5 padding, payloads longer than a block are cut into blocks and the results concatenated.</li>
+ * <li>SecurityJs: RSAUtils.encryptedString of security.js, no padding. Chars are zero padded to a whole number of
+ * chunks, each chunk read little-endian, the results written as hex and separated by spaces. Payload bytes are the
+ * chars, so only Latin-1 text matches, as with the library itself. SecurityJs_Reversed reverses them first,
+ * the way most login pages call it.</li>
+ * <li>JsEncrypt: JSEncrypt.encrypt, PKCS#1 v1.5 over its own UTF-8 encoding, which encodes surrogates one by one.
+ * Like the library it refuses text longer than a block, JsEncrypt_Long is the common encryptLong extension
+ * cutting the text every block length chars and concatenating the results.</li>
+ * </ul>
+ */
 public class RsaUtil {
+    private static final String TooLong = "Message too long for RSA";
+
+    private final SecureRandom random = new SecureRandom();
     private RsaConfig config;
-    private AsymmetricCrypto crypto;
+    private BigInteger modulus, exponent;
+    private int keyBytes;
+    private int securityJsChunk;
 
     public void setConfig(RsaConfig config) {
         this.config = config;
         try {
-            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-            RSAPublicKeySpec keySpec = new RSAPublicKeySpec(config.Modulus, config.Exponent);
-            crypto = new RSA(null, keyFactory.generatePublic(keySpec));
+            if (config.Modulus == null || config.Modulus.signum() <= 0 || config.Exponent == null || config.Exponent.signum() <= 0) {
+                throw new IllegalArgumentException("invalid RSA public key.");
+            }
+            this.modulus = config.Modulus;
+            this.exponent = config.Exponent;
+            this.keyBytes = (modulus.bitLength() + 7) >> 3;
+            // 2 * biHighIndex(m), the 16 bit digits below the modulus' highest one.
+            this.securityJsChunk = 2 * ((modulus.bitLength() - 1) >> 4);
+            if (keyBytes < 12 || securityJsChunk == 0) {
+                throw new IllegalArgumentException("RSA modulus too short.");
+            }
         } catch (Exception e) {
             throw fail(e);
         }
     }
 
     public String encrypt(byte[] inputArray) throws Exception {
-        byte[] resultBytes = this.crypto.encrypt(inputArray, KeyType.PublicKey);
-        return Utils.encode(resultBytes, config.OutFormat);
+        switch (config.Algorithms) {
+            case SecurityJs:
+                return securityJs(inputArray, false);
+            case SecurityJs_Reversed:
+                return securityJs(inputArray, true);
+            case JsEncrypt:
+            case JsEncrypt_Long:
+                return Utils.encode(jsEncrypt(new String(inputArray, StandardCharsets.UTF_8)), config.OutFormat);
+            default:
+                return Utils.encode(pkcs1(inputArray), config.OutFormat);
+        }
+    }
+
+    private byte[] pkcs1(byte[] data) {
+        int blockSize = keyBytes - 11;
+        BigInteger[] blocks = new BigInteger[Math.max(1, (data.length + blockSize - 1) / blockSize)];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = pkcs1Pad(Arrays.copyOfRange(data, i * blockSize, Math.min(data.length, (i + 1) * blockSize)));
+        }
+        return concat(modPow(blocks));
+    }
+
+    private byte[] jsEncrypt(String text) {
+        int blockChars = keyBytes - 11;
+        if (config.Algorithms == RsaAlgorithms.JsEncrypt && text.length() > blockChars) {
+            throw new IllegalArgumentException(TooLong);
+        }
+        BigInteger[] blocks = new BigInteger[Math.max(1, (text.length() + blockChars - 1) / blockChars)];
+        for (int i = 0; i < blocks.length; i++) {
+            byte[] bytes = jsEncryptUtf8(text.substring(i * blockChars, Math.min(text.length(), (i + 1) * blockChars)));
+            if (bytes.length > blockChars) {
+                // the library only checks the char count and produces garbage here.
+                throw new IllegalArgumentException(TooLong);
+            }
+            blocks[i] = pkcs1Pad(bytes);
+        }
+        return concat(modPow(blocks));
+    }
+
+    /**
+     * pkcs1pad2's UTF-8, char by char so a surrogate pair becomes two 3 byte sequences.
+     */
+    private static byte[] jsEncryptUtf8(String text) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length() * 3);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes.write(c);
+            } else if (c < 0x800) {
+                bytes.write(0xc0 | (c >> 6));
+                bytes.write(0x80 | (c & 0x3f));
+            } else {
+                bytes.write(0xe0 | (c >> 12));
+                bytes.write(0x80 | ((c >> 6) & 0x3f));
+                bytes.write(0x80 | (c & 0x3f));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private String securityJs(byte[] data, boolean reversed) {
+        byte[] chars = data.clone();
+        if (reversed) {
+            for (int i = 0, j = chars.length - 1; i < j; i++, j--) {
+                byte t = chars[i];
+                chars[i] = chars[j];
+                chars[j] = t;
+            }
+        }
+        BigInteger[] blocks = new BigInteger[(chars.length + securityJsChunk - 1) / securityJsChunk];
+        for (int i = 0; i < blocks.length; i++) {
+            byte[] bigEndian = new byte[securityJsChunk];
+            for (int k = 0; k < securityJsChunk && i * securityJsChunk + k < chars.length; k++) {
+                bigEndian[securityJsChunk - 1 - k] = chars[i * securityJsChunk + k];
+            }
+            blocks[i] = new BigInteger(1, bigEndian);
+        }
+        StringBuilder result = new StringBuilder();
+        for (BigInteger block : modPow(blocks)) {
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            // biToHex writes four hex digits for each 16 bit digit.
+            String hex = block.toString(16);
+            for (int pad = (4 - hex.length() % 4) % 4; pad > 0; pad--) {
+                result.append('0');
+            }
+            result.append(hex);
+        }
+        return result.toString();
+    }
+
+    private BigInteger pkcs1Pad(byte[] data) {
+        byte[] block = new byte[keyBytes];
+        block[1] = 2;
+        for (int i = 2; i < keyBytes - data.length - 1; i++) {
+            block[i] = (byte) (random.nextInt(255) + 1);
+        }
+        System.arraycopy(data, 0, block, keyBytes - data.length, data.length);
+        return new BigInteger(1, block);
+    }
+
+    private BigInteger[] modPow(BigInteger[] blocks) {
+        BigInteger[] results = new BigInteger[blocks.length];
+        IntStream indexes = IntStream.range(0, blocks.length);
+        if (config.ParallelChunks && blocks.length > 1) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> results[i] = blocks[i].modPow(exponent, modulus));
+        return results;
+    }
+
+    /**
+     * Every block as big-endian bytes of the modulus length, one after the other.
+     */
+    private byte[] concat(BigInteger[] blocks) {
+        byte[] result = new byte[blocks.length * keyBytes];
+        for (int i = 0; i < blocks.length; i++) {
+            byte[] bytes = blocks[i].toByteArray();
+            int length = Math.min(bytes.length, keyBytes);
+            System.arraycopy(bytes, bytes.length - length, result, (i + 1) * keyBytes - length, length);
+        }
+        return result;
     }
 
     private IllegalStateException fail(Exception e) {
@@ -33,4 +181,3 @@ public class RsaUtil {
         return new IllegalStateException(e);
     }
 }
-
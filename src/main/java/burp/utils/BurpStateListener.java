@@ -2,6 +2,7 @@ package burp.utils;
 
 import burp.BurpExtender;
 import burp.IExtensionStateListener;
+import burp.IIntruderPayloadProcessor;
 
 import java.io.IOException;
 
@@ -12,6 +13,9 @@ public class BurpStateListener implements IExtensionStateListener {
     }
     @Override
     public void extensionUnloaded() {
+        for (IIntruderPayloadProcessor processor : this.parent.IPProcessors.values()) {
+            this.parent.CloseIPProcessor(processor);  // release js engines.
+        }
         try {
             this.parent.store.close();  // leveldb unload.
         } catch (IOException e) {
@@ -0,0 +1,151 @@
+package burp.utils;
+
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.annotations.JSFunction;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Task queues of the event loop shim. Tasks are opaque script functions, the shim takes them back with next()
+ * and runs them itself, so this works the same for Rhino and JSR-223 engines. Queues are per thread, which keeps
+ * a shared sealed scope safe. Timers run on a virtual clock: nothing ever sleeps, a due timer runs as soon as
+ * no microtask is left. Host operations finishing on other threads (HttpUtils.GetAsync) hand their task back
+ * through expect(), the loop waits for them once nothing else is left to run.
+ */
+public class EventLoop extends ScriptableObject {
+    // timers nobody pumps (no promise was awaited) are dropped past this, earliest first.
+    private static final int MaxPendingTimers = 10000;
+
+    private final ThreadLocal<State> states = ThreadLocal.withInitial(State::new);
+
+    @Override
+    public String getClassName() {
+        return "EventLoop";
+    }
+
+    /**
+     * The loop a Rhino scope was set up with, null when there is none.
+     */
+    public static EventLoop of(Scriptable scope) {
+        Object loop = scope == null ? null : ScriptableObject.getProperty(scope, "EventLoop");
+        return loop instanceof EventLoop ? (EventLoop) loop : null;
+    }
+
+    /**
+     * Announce a task the calling thread is going to get from another thread. The returned callback can be called
+     * from any thread, a task arriving after clear() belongs to an earlier payload and is dropped.
+     */
+    public Consumer<Object> expect() {
+        State state = states.get();
+        state.expected++;
+        LinkedBlockingQueue<Object> arrived = state.arrived;
+        return arrived::add;
+    }
+
+    @JSFunction
+    public void microtask(Object task) {
+        states.get().microtasks.add(task);
+    }
+
+    /**
+     * @return the timer id for cancel().
+     */
+    @JSFunction
+    public int timer(Object task, double delay, boolean repeat) {
+        State state = states.get();
+        if (state.timers.size() >= MaxPendingTimers) {
+            state.timers.poll();
+        }
+        long interval = Double.isNaN(delay) || delay < 0 ? 0 : (long) delay;
+        Timer timer = new Timer(++state.lastId, state.now + interval, state.sequence++, task, repeat ? interval : -1);
+        state.timers.add(timer);
+        return timer.id;
+    }
+
+    @JSFunction
+    public void cancel(int id) {
+        states.get().timers.removeIf(timer -> timer.id == id);
+    }
+
+    /**
+     * @param waitMillis how long to wait for an expected task when nothing else is left.
+     * @return the next task to run, microtasks first, then tasks handed back by host operations, then timers,
+     * or null when there is none.
+     */
+    @JSFunction
+    public Object next(double waitMillis) {
+        State state = states.get();
+        if (!state.microtasks.isEmpty()) {
+            return state.microtasks.poll();
+        }
+        Object arrived = state.arrived.poll();
+        if (arrived != null) {
+            state.expected--;
+            return arrived;
+        }
+        Timer timer = state.timers.poll();
+        if (timer == null) {
+            return state.expected > 0 ? await(state, waitMillis) : null;
+        }
+        state.now = Math.max(state.now, timer.due);
+        if (timer.interval >= 0) {
+            state.timers.add(new Timer(timer.id, state.now + Math.max(1, timer.interval), state.sequence++, timer.task, timer.interval));
+        }
+        return timer.task;
+    }
+
+    private static Object await(State state, double waitMillis) {
+        try {
+            Object arrived = state.arrived.poll(Double.isNaN(waitMillis) || waitMillis < 0 ? 0 : (long) waitMillis, TimeUnit.MILLISECONDS);
+            if (arrived != null) {
+                state.expected--;
+            }
+            return arrived;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    @JSFunction
+    public void clear() {
+        State state = states.get();
+        state.microtasks.clear();
+        state.timers.clear();
+        state.arrived = new LinkedBlockingQueue<>();
+        state.expected = 0;
+    }
+
+    private static class State {
+        final ArrayDeque<Object> microtasks = new ArrayDeque<>();
+        LinkedBlockingQueue<Object> arrived = new LinkedBlockingQueue<>();
+        int expected;
+        final PriorityQueue<Timer> timers = new PriorityQueue<>(
+                Comparator.comparingLong((Timer timer) -> timer.due).thenComparingLong(timer -> timer.sequence));
+        long now;
+        long sequence;
+        int lastId;
+    }
+
+    private static class Timer {
+        final int id;
+        final long due;
+        final long sequence;
+        final Object task;
+        final long interval;
+
+        Timer(int id, long due, long sequence, Object task, long interval) {
+            this.id = id;
+            this.due = due;
+            this.sequence = sequence;
+            this.task = task;
+            this.interval = interval;
+        }
+    }
+}
@@ -1,35 +1,72 @@
 package burp.utils;
 
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import okhttp3.Response;
+import org.mozilla.javascript.BaseFunction;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
 import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
 import org.mozilla.javascript.annotations.JSStaticFunction;
 
 import java.io.IOException;
 import java.util.Calendar;
-import java.util.Date;
-import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+/**
+ * Http access for scripts, HttpUtils.Get(url, headers, ttlSeconds) and HttpUtils.GetAsync(url, headers, ttlSeconds).
+ * With a ttl a successful response body is cached per url and headers, and concurrent identical requests share one call.
+ * Without one every call goes to the network, which is what nonce endpoints need.
+ */
 public class HttpUtils extends ScriptableObject {
-    public static OkHttpClient client = new OkHttpClient();
+    // Intruder runs up to a few dozen threads, mostly against the same host.
+    private static final int MaxConnections = 32;
+    private static final int MaxCacheEntries = 1024;
+    private static final String UserAgent = GetUserAgent();
+    private static final ConcurrentHashMap<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    public static OkHttpClient client = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(MaxConnections, 5, TimeUnit.MINUTES))
+            .dispatcher(GetDispatcher())
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .readTimeout(30, TimeUnit.SECONDS)
+            .build();
 
     @Override
     public String getClassName() {
         return "HttpUtils";
     }
 
-    private static Request.Builder GetDefaultRequest(String url) {
+    private static Dispatcher GetDispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MaxConnections * 2);
+        dispatcher.setMaxRequestsPerHost(MaxConnections);
+        return dispatcher;
+    }
+
+    private static String GetUserAgent() {
         int fakeFirefoxVersion = Utils.GetRandomNumber(45, 94 + Calendar.getInstance().get(Calendar.YEAR) - 2021);
-        Request.Builder requestBuilder = new Request.Builder()
-                .url(url);
-        requestBuilder.header("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:" + fakeFirefoxVersion + ".0) Gecko/20100101 Firefox/" + fakeFirefoxVersion + ".0");
-        return requestBuilder;
+        return "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:" + fakeFirefoxVersion + ".0) Gecko/20100101 Firefox/" + fakeFirefoxVersion + ".0";
     }
 
-    @JSStaticFunction
-    public static String Get(String url, Object headers) {
-        Request.Builder requestBuilder = GetDefaultRequest(url);
+    private static Request GetRequest(String url, Object headers) {
+        Request.Builder requestBuilder = new Request.Builder()
+                .url(url);
+        requestBuilder.header("User-Agent", UserAgent);
         if (headers != null) {
             if (headers.getClass() == NativeObject.class) {
                 NativeObject nHeaders = (NativeObject) headers;
@@ -38,11 +75,130 @@ public class HttpUtils extends ScriptableObject {
                 }
             }
         }
+        return requestBuilder.get().build();
+    }
+
+    @JSStaticFunction
+    public static String Get(String url, Object headers, double ttlSeconds) {
         try {
-            return client.newCall(requestBuilder.get().build()).execute().body().string();
-        } catch (IOException e) {
-            e.printStackTrace();
+            return Fetch(GetRequest(url, headers), ttlSeconds).get();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace(Utils.stderr);
+            return "request error.";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return "request error.";
         }
     }
+
+    /**
+     * Starts the request right away and returns a Promise, so a script can fire several requests before it waits.
+     * The Promise settles on the calling thread's event loop once the response is there, so awaiting it is bound
+     * by the same timeout as any other promise.
+     */
+    @JSStaticFunction
+    public static Object GetAsync(Context cx, Scriptable thisObj, Object[] args, Function funObj) {
+        String url = Context.toString(args.length > 0 ? args[0] : null);
+        Object headers = args.length > 1 ? args[1] : null;
+        double ttlSeconds = args.length > 2 ? Context.toNumber(args[2]) : 0;
+        Scriptable scope = ScriptableObject.getTopLevelScope(funObj);
+        EventLoop loop = EventLoop.of(scope);
+        if (loop == null) {
+            throw Context.reportRuntimeError("HttpUtils.GetAsync needs the event loop shim.");
+        }
+        CompletableFuture<String> response = Fetch(GetRequest(url, headers), ttlSeconds);
+        Consumer<Object> settle = loop.expect();
+        return ScriptRuntime.newObject(cx, scope, "Promise", new Object[]{new BaseFunction() {
+            @Override
+            public Object call(Context cx, Scriptable scope, Scriptable thisObj, Object[] executorArgs) {
+                Function resolve = (Function) executorArgs[0];
+                Function reject = (Function) executorArgs[1];
+                response.whenComplete((body, ex) -> settle.accept(new BaseFunction() {
+                    @Override
+                    public Object call(Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                        if (ex == null) {
+                            return resolve.call(cx, scope, thisObj, new Object[]{body});
+                        }
+                        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                        return reject.call(cx, scope, thisObj, new Object[]{cause.toString()});
+                    }
+                }));
+                return Undefined.instance;
+            }
+        }});
+    }
+
+    private static CompletableFuture<String> Fetch(Request request, double ttlSeconds) {
+        // NaN when the script left the ttl out.
+        if (!(ttlSeconds > 0)) {
+            return Call(request);
+        }
+        String key = request.url() + "\n" + request.headers();
+        CacheEntry entry = cache.get(key);
+        if (entry != null && entry.expires > System.currentTimeMillis()) {
+            return CompletableFuture.completedFuture(entry.body);
+        }
+        CompletableFuture<String> created = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        Call(request).whenComplete((body, ex) -> {
+            if (ex == null) {
+                PutCache(key, new CacheEntry(body, System.currentTimeMillis() + (long) (ttlSeconds * 1000)));
+            }
+            inFlight.remove(key, created);
+            if (ex != null) {
+                created.completeExceptionally(ex);
+            } else {
+                created.complete(body);
+            }
+        });
+        return created;
+    }
+
+    private static void PutCache(String key, CacheEntry entry) {
+        if (cache.size() >= MaxCacheEntries) {
+            long now = System.currentTimeMillis();
+            cache.values().removeIf(cached -> cached.expires <= now);
+            if (cache.size() >= MaxCacheEntries) {
+                cache.clear();
+            }
+        }
+        cache.put(key, entry);
+    }
+
+    private static CompletableFuture<String> Call(Request request) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response closing = response) {
+                    if (!closing.isSuccessful()) {
+                        // an error page is no answer, and must not be cached as one.
+                        throw new IOException("HTTP " + closing.code() + " from " + request.url() + ".");
+                    }
+                    future.complete(closing.body().string());
+                } catch (IOException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    private static class CacheEntry {
+        final String body;
+        final long expires;
+
+        CacheEntry(String body, long expires) {
+            this.body = body;
+            this.expires = expires;
+        }
+    }
 }
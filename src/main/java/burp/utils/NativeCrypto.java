@@ -0,0 +1,456 @@
+package burp.utils;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.annotations.JSFunction;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.RSAKeyGenParameterSpec;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * JCE backend of the native CryptoJS and WebCrypto shims. Binary data crosses the script boundary as latin1 strings
+ * (one char per byte), the shim converts them from and to CryptoJS WordArrays.
+ * Methods are instance functions so the same object can be handed to JSR-223 engines.
+ */
+public class NativeCrypto extends ScriptableObject {
+    private static final SecureRandom random = new SecureRandom();
+    private static final ThreadLocal<HashMap<String, Cipher>> ciphers = ThreadLocal.withInitial(HashMap::new);
+
+    @Override
+    public String getClassName() {
+        return "NativeCrypto";
+    }
+
+    private static byte[] bytes(String latin1) {
+        return latin1 == null ? new byte[0] : latin1.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String latin1(byte[] bytes) {
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static String digestName(String alg) {
+        switch (alg) {
+            case "MD5":
+                return "MD5";
+            case "SHA1":
+                return "SHA-1";
+            case "SHA224":
+                return "SHA-224";
+            case "SHA256":
+                return "SHA-256";
+            case "SHA384":
+                return "SHA-384";
+            case "SHA512":
+                return "SHA-512";
+        }
+        throw new IllegalArgumentException("unsupported hasher " + alg);
+    }
+
+    private static Mac mac(String alg, byte[] key) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("Hmac" + digestName(alg).replace("-", ""));
+        // HMAC zero pads the key to the block size, so an empty key is the same as a single zero byte.
+        mac.init(new SecretKeySpec(key.length == 0 ? new byte[1] : key, mac.getAlgorithm()));
+        return mac;
+    }
+
+    @JSFunction
+    public String digest(String alg, String data) throws GeneralSecurityException {
+        return latin1(MessageDigest.getInstance(digestName(alg)).digest(bytes(data)));
+    }
+
+    @JSFunction
+    public String hmac(String alg, String key, String data) throws GeneralSecurityException {
+        return latin1(mac(alg, bytes(key)).doFinal(bytes(data)));
+    }
+
+    /**
+     * PBKDF2 over raw bytes, JCE's PBEKeySpec only accepts char passwords.
+     */
+    @JSFunction
+    public String pbkdf2(String alg, String password, String salt, int iterations, int keyBytes) throws GeneralSecurityException {
+        Mac mac = mac(alg, bytes(password));
+        byte[] saltBytes = bytes(salt);
+        int hLen = mac.getMacLength();
+        byte[] result = new byte[keyBytes];
+        byte[] u = new byte[hLen];
+        byte[] t = new byte[hLen];
+        for (int block = 1, offset = 0; offset < keyBytes; block++, offset += hLen) {
+            mac.update(saltBytes);
+            mac.update(new byte[]{(byte) (block >>> 24), (byte) (block >>> 16), (byte) (block >>> 8), (byte) block});
+            mac.doFinal(u, 0);
+            System.arraycopy(u, 0, t, 0, hLen);
+            for (int i = 1; i < iterations; i++) {
+                mac.update(u);
+                mac.doFinal(u, 0);
+                for (int j = 0; j < hLen; j++) {
+                    t[j] ^= u[j];
+                }
+            }
+            System.arraycopy(t, 0, result, offset, Math.min(hLen, keyBytes - offset));
+        }
+        return latin1(result);
+    }
+
+    /**
+     * OpenSSL EVP_BytesToKey as generalised by CryptoJS.EvpKDF.
+     */
+    @JSFunction
+    public String evpKdf(String alg, String password, String salt, int iterations, int keyBytes) throws GeneralSecurityException {
+        MessageDigest md = MessageDigest.getInstance(digestName(alg));
+        byte[] passwordBytes = bytes(password);
+        byte[] saltBytes = bytes(salt);
+        byte[] result = new byte[keyBytes];
+        byte[] block = null;
+        for (int offset = 0; offset < keyBytes; offset += block.length) {
+            if (block != null) {
+                md.update(block);
+            }
+            md.update(passwordBytes);
+            md.update(saltBytes);
+            block = md.digest();
+            for (int i = 1; i < iterations; i++) {
+                block = md.digest(block);
+            }
+            System.arraycopy(block, 0, result, offset, Math.min(block.length, keyBytes - offset));
+        }
+        return latin1(result);
+    }
+
+    @JSFunction
+    public String randomBytes(int count) {
+        byte[] result = new byte[count];
+        random.nextBytes(result);
+        return latin1(result);
+    }
+
+    /**
+     * Block cipher with CryptoJS semantics, padding is applied here and the JCE cipher always runs NoPadding.
+     *
+     * @param alg     AES, DES or TripleDES
+     * @param mode    CBC, ECB, CFB, OFB or CTR
+     * @param padding Pkcs7, ZeroPadding, NoPadding, Iso10126, AnsiX923 or Iso97971
+     */
+    @JSFunction
+    public String cipher(boolean encrypt, String alg, String mode, String padding, String key, String iv, String data) throws GeneralSecurityException {
+        int blockSize = alg.equals("AES") ? 16 : 8;
+        byte[] input = bytes(data);
+        boolean streamMode = !mode.equals("CBC") && !mode.equals("ECB");
+        int length = input.length;
+        if (encrypt) {
+            input = pad(input, padding, blockSize);
+            length = input.length;
+        }
+        if (!streamMode && input.length % blockSize != 0) {
+            // CryptoJS runs a trailing partial block as if zero filled and cuts the output back.
+            input = Arrays.copyOf(input, input.length + blockSize - input.length % blockSize);
+        }
+        Cipher cipher = getCipher(cipherName(alg) + "/" + mode + "/NoPadding");
+        SecretKeySpec keySpec = new SecretKeySpec(cipherKey(alg, bytes(key)), cipherName(alg));
+        if (mode.equals("ECB")) {
+            cipher.init(encrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, keySpec);
+        } else {
+            cipher.init(encrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, keySpec, new IvParameterSpec(Arrays.copyOf(bytes(iv), blockSize)));
+        }
+        byte[] output = Arrays.copyOf(cipher.doFinal(input), length);
+        return latin1(encrypt ? output : unpad(output, padding));
+    }
+
+    private static Cipher getCipher(String transformation) throws GeneralSecurityException {
+        HashMap<String, Cipher> cache = ciphers.get();
+        Cipher cipher = cache.get(transformation);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            cache.put(transformation, cipher);
+        }
+        return cipher;
+    }
+
+    private static String cipherName(String alg) {
+        switch (alg) {
+            case "AES":
+                return "AES";
+            case "DES":
+                return "DES";
+            case "TripleDES":
+                return "DESede";
+        }
+        throw new IllegalArgumentException("unsupported cipher " + alg);
+    }
+
+    private static byte[] cipherKey(String alg, byte[] key) {
+        switch (alg) {
+            case "AES":
+                if (key.length != 16 && key.length != 24 && key.length != 32) {
+                    throw new IllegalArgumentException("AES key must be 128, 192 or 256 bits.");
+                }
+                return key;
+            case "DES":
+                if (key.length < 8) {
+                    throw new IllegalArgumentException("DES key must be at least 64 bits.");
+                }
+                return Arrays.copyOf(key, 8);
+            default:
+                if (key.length == 8) {
+                    return Utils.byteMerger(Utils.byteMerger(key, key), key);
+                } else if (key.length == 16) {
+                    return Utils.byteMerger(key, Arrays.copyOf(key, 8));
+                } else if (key.length >= 24) {
+                    return Arrays.copyOf(key, 24);
+                }
+                throw new IllegalArgumentException("TripleDES key must be 64, 128 or 192 bits.");
+        }
+    }
+
+    private static byte[] pad(byte[] data, String padding, int blockSize) {
+        int count = blockSize - data.length % blockSize;
+        byte[] result;
+        switch (padding) {
+            case "NoPadding":
+                return data;
+            case "ZeroPadding":
+                return data.length % blockSize == 0 ? data : Arrays.copyOf(data, data.length + count);
+            case "Iso97971":
+                return pad(Utils.byteMerger(data, new byte[]{(byte) 0x80}), "ZeroPadding", blockSize);
+            case "Iso10126":
+                result = Arrays.copyOf(data, data.length + count);
+                byte[] fill = new byte[count - 1];
+                random.nextBytes(fill);
+                System.arraycopy(fill, 0, result, data.length, fill.length);
+                break;
+            case "AnsiX923":
+                result = Arrays.copyOf(data, data.length + count);
+                break;
+            case "Pkcs7":
+                result = Arrays.copyOf(data, data.length + count);
+                Arrays.fill(result, data.length, result.length, (byte) count);
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported padding " + padding);
+        }
+        result[result.length - 1] = (byte) count;
+        return result;
+    }
+
+    private static byte[] unpad(byte[] data, String padding) {
+        int length = data.length;
+        if (length == 0) {
+            return data;
+        }
+        switch (padding) {
+            case "NoPadding":
+                return data;
+            case "ZeroPadding":
+                while (length > 0 && data[length - 1] == 0) {
+                    length--;
+                }
+                break;
+            case "Iso97971":
+                while (length > 0 && data[length - 1] == 0) {
+                    length--;
+                }
+                length = Math.max(0, length - 1);
+                break;
+            default:
+                length = Math.max(0, length - (data[length - 1] & 0xff));
+        }
+        return Arrays.copyOf(data, length);
+    }
+
+    @JSFunction
+    public String utf8Encode(String text) {
+        return latin1(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @JSFunction
+    public String utf8Decode(String data) {
+        return new String(bytes(data), StandardCharsets.UTF_8);
+    }
+
+    @JSFunction
+    public String base64Encode(String data) {
+        return Base64.encodeBase64String(bytes(data));
+    }
+
+    @JSFunction
+    public String base64Decode(String text) {
+        return latin1(Base64.decodeBase64(text));
+    }
+
+    @JSFunction
+    public String hexEncode(String data) {
+        return Hex.encodeHexString(bytes(data));
+    }
+
+    @JSFunction
+    public String hexDecode(String text) {
+        return latin1(Utils.hex(text));
+    }
+
+    // --- WebCrypto primitives, keys travel as raw bytes (AES, HMAC) or DER (RSA: spki public, pkcs8 private).
+
+    /**
+     * @param mode      GCM, CBC or CTR
+     * @param tagLength GCM tag length in bits
+     */
+    @JSFunction
+    public String aesCipher(boolean encrypt, String mode, String key, String iv, String additionalData, int tagLength, String data) throws GeneralSecurityException {
+        int opmode = encrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE;
+        SecretKeySpec keySpec = new SecretKeySpec(cipherKey("AES", bytes(key)), "AES");
+        Cipher cipher;
+        switch (mode) {
+            case "GCM":
+                // GCM refuses to encrypt twice with the same key and iv, so it is never cached.
+                cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                cipher.init(opmode, keySpec, new GCMParameterSpec(tagLength, bytes(iv)));
+                if (!additionalData.isEmpty()) {
+                    cipher.updateAAD(bytes(additionalData));
+                }
+                break;
+            case "CBC":
+                cipher = getCipher("AES/CBC/PKCS5Padding");
+                cipher.init(opmode, keySpec, new IvParameterSpec(bytes(iv)));
+                break;
+            case "CTR":
+                // JCE increments the whole 128 bit counter block, WebCrypto's counter length only matters on wrap around.
+                cipher = getCipher("AES/CTR/NoPadding");
+                cipher.init(opmode, keySpec, new IvParameterSpec(bytes(iv)));
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported AES mode " + mode);
+        }
+        return latin1(cipher.doFinal(bytes(data)));
+    }
+
+    @JSFunction
+    public String rsaOaep(boolean encrypt, String hash, String keyDer, String label, String data) throws GeneralSecurityException {
+        String digest = digestName(hash);
+        OAEPParameterSpec spec = new OAEPParameterSpec(digest, "MGF1", new MGF1ParameterSpec(digest), new PSource.PSpecified(bytes(label)));
+        Cipher cipher = getCipher("RSA/ECB/OAEPPadding");
+        if (encrypt) {
+            cipher.init(Cipher.ENCRYPT_MODE, publicKey(keyDer), spec);
+        } else {
+            cipher.init(Cipher.DECRYPT_MODE, privateKey(keyDer), spec);
+        }
+        return latin1(cipher.doFinal(bytes(data)));
+    }
+
+    /**
+     * RSASSA-PKCS1-v1_5 signature.
+     */
+    @JSFunction
+    public String rsaSign(String hash, String pkcs8, String data) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance(digestName(hash).replace("-", "") + "withRSA");
+        signature.initSign(privateKey(pkcs8));
+        signature.update(bytes(data));
+        return latin1(signature.sign());
+    }
+
+    @JSFunction
+    public boolean rsaVerify(String hash, String spki, String signatureBytes, String data) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance(digestName(hash).replace("-", "") + "withRSA");
+        signature.initVerify(publicKey(spki));
+        signature.update(bytes(data));
+        return signature.verify(bytes(signatureBytes));
+    }
+
+    /**
+     * @return pkcs8 DER of a new key pair, {@link #rsaPublicKey} gives the public half.
+     */
+    @JSFunction
+    public String rsaGenerate(int modulusLength, String publicExponent) throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(new RSAKeyGenParameterSpec(modulusLength, new BigInteger(1, bytes(publicExponent))), random);
+        return latin1(generator.generateKeyPair().getPrivate().getEncoded());
+    }
+
+    @JSFunction
+    public String rsaPublicKey(String pkcs8) throws GeneralSecurityException {
+        RSAPrivateCrtKey key = (RSAPrivateCrtKey) privateKey(pkcs8);
+        return latin1(rsaKeyFactory().generatePublic(new RSAPublicKeySpec(key.getModulus(), key.getPublicExponent())).getEncoded());
+    }
+
+    /**
+     * Base64url JWK members to DER, pkcs8 when the private exponent is given, spki otherwise.
+     */
+    @JSFunction
+    public String rsaImportJwk(String n, String e, String d, String p, String q, String dp, String dq, String qi) throws GeneralSecurityException {
+        if (d.isEmpty()) {
+            return latin1(rsaKeyFactory().generatePublic(new RSAPublicKeySpec(jwkInt(n), jwkInt(e))).getEncoded());
+        }
+        return latin1(rsaKeyFactory().generatePrivate(new RSAPrivateCrtKeySpec(jwkInt(n), jwkInt(e), jwkInt(d),
+                jwkInt(p), jwkInt(q), jwkInt(dp), jwkInt(dq), jwkInt(qi))).getEncoded());
+    }
+
+    /**
+     * @return the JWK members of a DER key as a JSON object string.
+     */
+    @JSFunction
+    public String rsaExportJwk(boolean isPrivate, String der) throws GeneralSecurityException {
+        StringBuilder json = new StringBuilder("{\"kty\":\"RSA\"");
+        if (isPrivate) {
+            RSAPrivateCrtKey key = (RSAPrivateCrtKey) privateKey(der);
+            BigInteger[] values = {key.getModulus(), key.getPublicExponent(), key.getPrivateExponent(), key.getPrimeP(),
+                    key.getPrimeQ(), key.getPrimeExponentP(), key.getPrimeExponentQ(), key.getCrtCoefficient()};
+            String[] names = {"n", "e", "d", "p", "q", "dp", "dq", "qi"};
+            for (int i = 0; i < names.length; i++) {
+                json.append(",\"").append(names[i]).append("\":\"").append(jwkString(values[i])).append('"');
+            }
+        } else {
+            RSAPublicKey key = (RSAPublicKey) publicKey(der);
+            json.append(",\"n\":\"").append(jwkString(key.getModulus())).append('"');
+            json.append(",\"e\":\"").append(jwkString(key.getPublicExponent())).append('"');
+        }
+        return json.append('}').toString();
+    }
+
+    private static KeyFactory rsaKeyFactory() throws GeneralSecurityException {
+        return KeyFactory.getInstance("RSA");
+    }
+
+    private static PublicKey publicKey(String spki) throws GeneralSecurityException {
+        return rsaKeyFactory().generatePublic(new X509EncodedKeySpec(bytes(spki)));
+    }
+
+    private static PrivateKey privateKey(String pkcs8) throws GeneralSecurityException {
+        return rsaKeyFactory().generatePrivate(new PKCS8EncodedKeySpec(bytes(pkcs8)));
+    }
+
+    private static BigInteger jwkInt(String base64Url) {
+        return new BigInteger(1, Base64.decodeBase64(base64Url));
+    }
+
+    private static String jwkString(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return Base64.encodeBase64URLSafeString(bytes);
+    }
+}
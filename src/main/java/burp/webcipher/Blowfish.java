@@ -0,0 +1,96 @@
+package burp.webcipher;
+
+import java.math.BigInteger;
+
+/**
+ * Blowfish on big-endian 64 bit blocks held in a long, the key schedule is done once per key.
+ * The initial P-array and S-boxes are the hexadecimal digits of pi, computed on first use instead of being spelled out.
+ */
+public class Blowfish {
+    private static final int Rounds = 16;
+
+    private final int[] p = new int[Rounds + 2];
+    private final int[] s0 = new int[256], s1 = new int[256], s2 = new int[256], s3 = new int[256];
+
+    public Blowfish(byte[] key) {
+        if (key == null || key.length == 0 || key.length > 56) {
+            throw new IllegalArgumentException("Blowfish key must be 1 to 56 bytes.");
+        }
+        int[] digits = PiDigits.Words;
+        System.arraycopy(digits, 0, p, 0, p.length);
+        System.arraycopy(digits, p.length, s0, 0, 256);
+        System.arraycopy(digits, p.length + 256, s1, 0, 256);
+        System.arraycopy(digits, p.length + 512, s2, 0, 256);
+        System.arraycopy(digits, p.length + 768, s3, 0, 256);
+        int position = 0;
+        for (int i = 0; i < p.length; i++) {
+            int word = 0;
+            for (int j = 0; j < 4; j++) {
+                word = (word << 8) | (key[position] & 0xff);
+                position = (position + 1) % key.length;
+            }
+            p[i] ^= word;
+        }
+        long block = 0;
+        for (int i = 0; i < p.length; i += 2) {
+            block = encryptBlock(block);
+            p[i] = (int) (block >>> 32);
+            p[i + 1] = (int) block;
+        }
+        for (int[] box : new int[][]{s0, s1, s2, s3}) {
+            for (int i = 0; i < 256; i += 2) {
+                block = encryptBlock(block);
+                box[i] = (int) (block >>> 32);
+                box[i + 1] = (int) block;
+            }
+        }
+    }
+
+    private int f(int x) {
+        return ((s0[x >>> 24] + s1[(x >>> 16) & 0xff]) ^ s2[(x >>> 8) & 0xff]) + s3[x & 0xff];
+    }
+
+    public long encryptBlock(long block) {
+        int left = (int) (block >>> 32), right = (int) block;
+        for (int i = 0; i < Rounds; i += 2) {
+            left ^= p[i];
+            right ^= f(left);
+            right ^= p[i + 1];
+            left ^= f(right);
+        }
+        left ^= p[Rounds];
+        right ^= p[Rounds + 1];
+        return ((long) right << 32) | (left & 0xffffffffL);
+    }
+
+    private static class PiDigits {
+        // P-array and the four S-boxes.
+        static final int[] Words = compute(18 + 4 * 256);
+
+        /**
+         * The first {@code count} 32 bit words of the fraction of pi, by Machin's formula in fixed point.
+         */
+        static int[] compute(int count) {
+            int bits = count * 32 + 64;
+            BigInteger pi = arctanInverse(5, bits).shiftLeft(4).subtract(arctanInverse(239, bits).shiftLeft(2));
+            BigInteger fraction = pi.subtract(BigInteger.valueOf(3).shiftLeft(bits));
+            int[] words = new int[count];
+            for (int i = 0; i < count; i++) {
+                words[i] = fraction.shiftRight(bits - 32 * (i + 1)).intValue();
+            }
+            return words;
+        }
+
+        private static BigInteger arctanInverse(int x, int bits) {
+            BigInteger squared = BigInteger.valueOf((long) x * x);
+            BigInteger power = BigInteger.ONE.shiftLeft(bits).divide(BigInteger.valueOf(x));
+            BigInteger sum = power;
+            for (int k = 1; power.signum() != 0; k++) {
+                power = power.divide(squared);
+                BigInteger term = power.divide(BigInteger.valueOf(2L * k + 1));
+                sum = (k & 1) == 1 ? sum.subtract(term) : sum.add(term);
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package burp.webcipher;
+
+public enum WebCipherAlgorithms {
+    XXTEA,
+    XXTEA_Legacy,
+    XXTEA_NoLength,
+    TEA_ECB_ZeroPadding,
+    TEA_ECB_PKCS5Padding,
+    TEA_CBC_ZeroPadding,
+    TEA_CBC_PKCS5Padding,
+    Blowfish_ECB_PKCS5Padding,
+    Blowfish_ECB_ZeroPadding,
+    Blowfish_CBC_PKCS5Padding,
+    Blowfish_CBC_ZeroPadding,
+    RC4,
+    RC4Drop,
+}
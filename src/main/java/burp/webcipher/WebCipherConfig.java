@@ -0,0 +1,9 @@
+package burp.webcipher;
+
+import burp.utils.OutFormat;
+
+public class WebCipherConfig {
+    public WebCipherAlgorithms Algorithms;
+    public byte[] Key, IV;
+    public OutFormat OutFormat;
+}
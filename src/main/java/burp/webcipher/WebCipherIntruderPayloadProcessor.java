@@ -0,0 +1,36 @@
+package burp.webcipher;
+
+import burp.BurpExtender;
+import burp.IIntruderPayloadProcessor;
+
+public class WebCipherIntruderPayloadProcessor implements IIntruderPayloadProcessor {
+    private BurpExtender parent;
+    private final String extName;
+    private final WebCipherUtil WebCipherUtil;
+
+    public WebCipherIntruderPayloadProcessor(final BurpExtender newParent, String extName, WebCipherConfig config) {
+        this.parent = newParent;
+        this.extName = extName;
+        WebCipherUtil = new WebCipherUtil();
+        WebCipherUtil.setConfig(config);
+    }
+
+    @Override
+    public String getProcessorName() {
+        return "BurpCrypto - Web Cipher Encrypt - " + extName;
+    }
+
+    @Override
+    public byte[] processPayload(final byte[] currentPayload, final byte[] originalPayload, final byte[] baseValue) {
+        try {
+            byte[] result = WebCipherUtil.encrypt(currentPayload).getBytes("UTF-8");
+            parent.dict.Log(result, originalPayload);
+            return result;
+        } catch (Exception e) {
+            this.parent.callbacks.issueAlert(e.toString());
+            this.parent.stderr.println();
+            e.printStackTrace(this.parent.stderr);
+            return null;
+        }
+    }
+}
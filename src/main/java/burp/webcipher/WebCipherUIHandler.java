@@ -0,0 +1,170 @@
+package burp.webcipher;
+
+import burp.BurpExtender;
+import burp.utils.*;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.*;
+import java.awt.event.ItemEvent;
+import java.util.ArrayList;
+
+public class WebCipherUIHandler {
+    private BurpExtender parent;
+    private JPanel mainPanel;
+    private JComboBox<String> webCipherAlgSelector;
+    private JComboBox<String> webCipherKeyFormatSelector;
+    private JComboBox<String> webCipherIVFormatSelector;
+    private JComboBox<String> webCipherOutFormatSelector;
+    private JTextField webCipherKeyText;
+    private JTextField webCipherIVText;
+    private JButton applyBtn, deleteBtn;
+
+    public WebCipherUIHandler(BurpExtender parent) {
+        this.parent = parent;
+    }
+
+    public JPanel getPanel() {
+        final JSeparator separator = new JSeparator(0);
+        separator.setMaximumSize(new Dimension(separator.getMaximumSize().width, separator.getPreferredSize().height));
+        separator.setAlignmentX(0.0f);
+
+        mainPanel = new JPanel();
+        mainPanel.setAlignmentX(0.0f);
+        mainPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
+        mainPanel.setLayout(new BoxLayout(mainPanel, 1));
+
+        final JLabel label1 = new JLabel("Web Cipher Setting");
+        label1.setForeground(new Color(249, 130, 11));
+        label1.setFont(new Font("Nimbus", 1, 16));
+        label1.setAlignmentX(0.0f);
+
+        final JPanel panel1 = UIUtil.GetXJPanel();
+        final JPanel panel2 = UIUtil.GetXJPanel();
+        final JPanel panel3 = UIUtil.GetXJPanel();
+        final JPanel panel4 = UIUtil.GetXJPanel();
+        final JPanel panel5 = UIUtil.GetXJPanel();
+
+        final JLabel label2 = new JLabel("Cipher Alg: ");
+        webCipherAlgSelector = new JComboBox(GetWebCipherAlgs());
+        webCipherAlgSelector.setMaximumSize(webCipherAlgSelector.getPreferredSize());
+        webCipherAlgSelector.addItemListener(e -> {
+            if (e.getStateChange() == ItemEvent.SELECTED) {
+                String item = (String) e.getItem();
+                panel3.setVisible(item.contains("/CBC/"));
+            }
+        });
+        webCipherAlgSelector.setSelectedIndex(0);
+        panel3.setVisible(false);
+
+        final JLabel label3 = new JLabel("Key: ");
+        webCipherKeyFormatSelector = new JComboBox(Utils.GetKeyFormats());
+        webCipherKeyFormatSelector.setMaximumSize(webCipherKeyFormatSelector.getPreferredSize());
+        webCipherKeyFormatSelector.setSelectedIndex(0);
+        webCipherKeyText = new JTextField(200);
+        webCipherKeyText.setMaximumSize(webCipherKeyText.getPreferredSize());
+
+        final JLabel label4 = new JLabel("IV: ");
+        webCipherIVFormatSelector = new JComboBox(Utils.GetKeyFormats());
+        webCipherIVFormatSelector.setMaximumSize(webCipherIVFormatSelector.getPreferredSize());
+        webCipherIVFormatSelector.setSelectedIndex(0);
+        webCipherIVText = new JTextField(200);
+        webCipherIVText.setMaximumSize(webCipherIVText.getPreferredSize());
+
+        final JLabel label5 = new JLabel("Output Format: ");
+        webCipherOutFormatSelector = new JComboBox(Utils.GetOutFormats());
+        webCipherOutFormatSelector.setMaximumSize(webCipherOutFormatSelector.getPreferredSize());
+        webCipherOutFormatSelector.setSelectedIndex(0);
+
+        applyBtn = new JButton("Add processor");
+        applyBtn.setMaximumSize(applyBtn.getPreferredSize());
+        applyBtn.addActionListener(e -> {
+            WebCipherAlgorithms alg = WebCipherAlgorithms.valueOf(webCipherAlgSelector.getSelectedItem().toString().replace('/', '_'));
+            KeyFormat keyFormat = KeyFormat.valueOf(webCipherKeyFormatSelector.getSelectedItem().toString());
+            KeyFormat ivFormat = KeyFormat.valueOf(webCipherIVFormatSelector.getSelectedItem().toString());
+            OutFormat outFormat = OutFormat.valueOf(webCipherOutFormatSelector.getSelectedItem().toString());
+            WebCipherConfig webCipherConfig = new WebCipherConfig();
+            webCipherConfig.Algorithms = alg;
+            webCipherConfig.OutFormat = outFormat;
+            try {
+                webCipherConfig.Key = Utils.StringKeyToByteKey(webCipherKeyText.getText(), keyFormat);
+            } catch (Exception ex) {
+                System.out.println(ex);
+                JOptionPane.showMessageDialog(mainPanel, "Key format error!");
+                return;
+            }
+            if (alg.name().contains("_CBC_"))
+                try {
+                    webCipherConfig.IV = Utils.StringKeyToByteKey(webCipherIVText.getText(), ivFormat);
+                } catch (Exception ex) {
+                    System.out.println(ex);
+                    JOptionPane.showMessageDialog(mainPanel, "IV format error!");
+                    return;
+                }
+            String extName = JOptionPane.showInputDialog("Please give this processor a special name:");
+            if (extName != null) {
+                if (extName.length() == 0) {
+                    JOptionPane.showMessageDialog(mainPanel, "name empty!");
+                    return;
+                }
+            } else return;
+            if (!parent.CheckIPProcessorName(extName)) {
+                return;
+            }
+            WebCipherIntruderPayloadProcessor processor;
+            try {
+                processor = new WebCipherIntruderPayloadProcessor(parent, extName, webCipherConfig);
+            } catch (IllegalStateException ex) {
+                JOptionPane.showMessageDialog(mainPanel, ex.getCause().getMessage());
+                return;
+            }
+            if (parent.RegIPProcessor(extName, processor))
+                JOptionPane.showMessageDialog(mainPanel, "Apply processor success!");
+        });
+
+        deleteBtn = new JButton("Remove processor");
+        deleteBtn.setMaximumSize(deleteBtn.getPreferredSize());
+        deleteBtn.addActionListener(e -> {
+            String extName = JOptionPane.showInputDialog("Please enter the special name you want to delete:");
+            if (extName.length() == 0) {
+                JOptionPane.showMessageDialog(mainPanel, "name empty!");
+                return;
+            }
+            parent.RemoveIPProcessor(extName);
+            JOptionPane.showMessageDialog(mainPanel, "Remove success!");
+        });
+
+
+
+        panel1.add(label2);
+        panel1.add(webCipherAlgSelector);
+        panel2.add(label3);
+        panel2.add(webCipherKeyFormatSelector);
+        panel2.add(webCipherKeyText);
+        panel3.add(label4);
+        panel3.add(webCipherIVFormatSelector);
+        panel3.add(webCipherIVText);
+        panel4.add(label5);
+        panel4.add(webCipherOutFormatSelector);
+        panel5.add(applyBtn);
+        panel5.add(deleteBtn);
+
+        mainPanel.add(label1);
+        mainPanel.add(panel1);
+        mainPanel.add(panel2);
+        mainPanel.add(panel3);
+        mainPanel.add(panel4);
+        mainPanel.add(panel5);
+        return mainPanel;
+    }
+
+    private String[] GetWebCipherAlgs() {
+        ArrayList<String> algStrs = new ArrayList<String>();
+        WebCipherAlgorithms[] algs = WebCipherAlgorithms.values();
+        for (WebCipherAlgorithms alg : algs) {
+            algStrs.add(alg.name().replace('_', '/'));
+        }
+        return algStrs.toArray(new String[algStrs.size()]);
+    }
+
+}
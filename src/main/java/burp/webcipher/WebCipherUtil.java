@@ -0,0 +1,250 @@
+package burp.webcipher;
+
+import burp.utils.CipherInfo;
+import burp.utils.OutFormat;
+import burp.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Ciphers that target frontends ship as plain js, implemented on int words so they match those scripts byte for byte:
+ * <ul>
+ * <li>XXTEA: xxtea.js and its ports, UTF-8 text with the byte length appended as last word.</li>
+ * <li>XXTEA_Legacy: the old xxtea.js str2long, UTF-16 char codes packed four per word, the char count appended.</li>
+ * <li>XXTEA_NoLength: Chris Veness' Block TEA, UTF-8 text zero padded to whole words, nothing appended.</li>
+ * <li>TEA and Blowfish: 64 bit blocks in big-endian order, ECB or CBC.</li>
+ * <li>RC4 and RC4Drop, which like CryptoJS drops the first 768 bytes of keystream.</li>
+ * </ul>
+ */
+public class WebCipherUtil {
+    private static final int Delta = 0x9E3779B9;
+    private static final int RC4DropBytes = 768;
+
+    private WebCipherConfig config;
+    private CipherInfo cipherInfo;
+    private int[] teaKey;
+    private Blowfish blowfish;
+    private byte[] rc4State;
+    private long iv;
+
+    public void setConfig(WebCipherConfig config) {
+        this.config = config;
+        try {
+            switch (config.Algorithms) {
+                case XXTEA:
+                case XXTEA_Legacy:
+                case XXTEA_NoLength:
+                    this.teaKey = keyWords(config.Key, false);
+                    return;
+                case RC4:
+                case RC4Drop:
+                    this.rc4State = rc4Schedule(config.Key, config.Algorithms == WebCipherAlgorithms.RC4Drop ? RC4DropBytes : 0);
+                    return;
+                default:
+                    this.cipherInfo = new CipherInfo(config.Algorithms.name().replace("_", "/"));
+                    if (this.cipherInfo.Algorithm.equals("TEA")) {
+                        this.teaKey = keyWords(config.Key, true);
+                    } else {
+                        this.blowfish = new Blowfish(config.Key);
+                    }
+                    if (this.cipherInfo.Mode.equals("CBC")) {
+                        if (config.IV == null || config.IV.length != 8) {
+                            throw new IllegalArgumentException("IV must be 8 bytes.");
+                        }
+                        this.iv = readLong(config.IV, 0);
+                    }
+            }
+        } catch (Exception e) {
+            throw fail(e);
+        }
+    }
+
+    public String encrypt(byte[] plaintext) {
+        byte[] encrypted;
+        switch (config.Algorithms) {
+            case XXTEA:
+                encrypted = xxtea(plaintext, true);
+                break;
+            case XXTEA_Legacy:
+                encrypted = xxteaLegacy(new String(plaintext, StandardCharsets.UTF_8));
+                break;
+            case XXTEA_NoLength:
+                encrypted = xxtea(plaintext, false);
+                break;
+            case RC4:
+            case RC4Drop:
+                encrypted = rc4(plaintext);
+                break;
+            default:
+                encrypted = blocks(plaintext);
+        }
+        return Utils.encode(encrypted, config.OutFormat);
+    }
+
+    /**
+     * Key bytes as four words, zero padded or cut to 16 bytes the way the js versions treat short and long keys.
+     */
+    private static int[] keyWords(byte[] key, boolean bigEndian) {
+        int[] words = new int[4];
+        for (int i = 0; i < Math.min(key.length, 16); i++) {
+            int shift = bigEndian ? (3 - (i & 3)) << 3 : (i & 3) << 3;
+            words[i >> 2] |= (key[i] & 0xff) << shift;
+        }
+        return words;
+    }
+
+    private byte[] xxtea(byte[] data, boolean appendLength) {
+        if (data.length == 0) {
+            return data;
+        }
+        int dataWords = (data.length + 3) >>> 2;
+        int[] v = new int[appendLength ? dataWords + 1 : Math.max(dataWords, 2)];
+        for (int i = 0; i < data.length; i++) {
+            v[i >> 2] |= (data[i] & 0xff) << ((i & 3) << 3);
+        }
+        if (appendLength) {
+            v[dataWords] = data.length;
+        }
+        xxteaEncrypt(v, teaKey);
+        return littleEndianBytes(v);
+    }
+
+    private byte[] xxteaLegacy(String data) {
+        if (data.isEmpty()) {
+            return new byte[0];
+        }
+        int length = data.length();
+        int[] v = new int[((length + 3) >>> 2) + 1];
+        for (int i = 0; i < length; i++) {
+            // wider chars spill into the neighbouring bytes exactly like charCodeAt(i) << n does in js.
+            v[i >> 2] |= data.charAt(i) << ((i & 3) << 3);
+        }
+        v[v.length - 1] = length;
+        xxteaEncrypt(v, teaKey);
+        return littleEndianBytes(v);
+    }
+
+    private static void xxteaEncrypt(int[] v, int[] k) {
+        int n = v.length - 1;
+        int z = v[n], y, sum = 0, e, p;
+        for (int q = 6 + 52 / (n + 1); q > 0; q--) {
+            sum += Delta;
+            e = (sum >>> 2) & 3;
+            for (p = 0; p < n; p++) {
+                y = v[p + 1];
+                z = v[p] += (((z >>> 5) ^ (y << 2)) + ((y >>> 3) ^ (z << 4))) ^ ((sum ^ y) + (k[(p & 3) ^ e] ^ z));
+            }
+            y = v[0];
+            z = v[n] += (((z >>> 5) ^ (y << 2)) + ((y >>> 3) ^ (z << 4))) ^ ((sum ^ y) + (k[(p & 3) ^ e] ^ z));
+        }
+    }
+
+    private static byte[] littleEndianBytes(int[] v) {
+        byte[] bytes = new byte[v.length << 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (v[i >> 2] >>> ((i & 3) << 3));
+        }
+        return bytes;
+    }
+
+    private long teaEncrypt(long block) {
+        int v0 = (int) (block >>> 32), v1 = (int) block, sum = 0;
+        int k0 = teaKey[0], k1 = teaKey[1], k2 = teaKey[2], k3 = teaKey[3];
+        for (int i = 0; i < 32; i++) {
+            sum += Delta;
+            v0 += ((v1 << 4) + k0) ^ (v1 + sum) ^ ((v1 >>> 5) + k1);
+            v1 += ((v0 << 4) + k2) ^ (v0 + sum) ^ ((v0 >>> 5) + k3);
+        }
+        return ((long) v0 << 32) | (v1 & 0xffffffffL);
+    }
+
+    /**
+     * TEA and Blowfish over padded 8 byte blocks, chained when the mode is CBC.
+     */
+    private byte[] blocks(byte[] data) {
+        byte[] padded;
+        if (cipherInfo.Padding.equals("PKCS5Padding")) {
+            int pad = 8 - data.length % 8;
+            padded = new byte[data.length + pad];
+            System.arraycopy(data, 0, padded, 0, data.length);
+            for (int i = data.length; i < padded.length; i++) {
+                padded[i] = (byte) pad;
+            }
+        } else {
+            padded = Utils.ZeroPadding(data, 8);
+        }
+        boolean cbc = cipherInfo.Mode.equals("CBC");
+        long previous = iv;
+        for (int offset = 0; offset < padded.length; offset += 8) {
+            long block = readLong(padded, offset);
+            if (cbc) {
+                block ^= previous;
+            }
+            block = blowfish != null ? blowfish.encryptBlock(block) : teaEncrypt(block);
+            previous = block;
+            for (int i = 0; i < 8; i++) {
+                padded[offset + i] = (byte) (block >>> (56 - (i << 3)));
+            }
+        }
+        return padded;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    /**
+     * The permutation after the key schedule, and after {@code drop} bytes of keystream have been thrown away.
+     * Every payload starts from a copy of it.
+     */
+    private static byte[] rc4Schedule(byte[] key, int drop) {
+        if (key == null || key.length == 0 || key.length > 256) {
+            throw new IllegalArgumentException("RC4 key must be 1 to 256 bytes.");
+        }
+        byte[] s = new byte[258];
+        for (int i = 0; i < 256; i++) {
+            s[i] = (byte) i;
+        }
+        for (int i = 0, j = 0; i < 256; i++) {
+            j = (j + s[i] + key[i % key.length]) & 0xff;
+            byte t = s[i];
+            s[i] = s[j];
+            s[j] = t;
+        }
+        // the stream position lives in the last two bytes, so a copy carries on where the drop stopped.
+        int i = 0, j = 0;
+        for (int n = 0; n < drop; n++) {
+            i = (i + 1) & 0xff;
+            j = (j + s[i]) & 0xff;
+            byte t = s[i];
+            s[i] = s[j];
+            s[j] = t;
+        }
+        s[256] = (byte) i;
+        s[257] = (byte) j;
+        return s;
+    }
+
+    private byte[] rc4(byte[] data) {
+        byte[] s = rc4State.clone();
+        int i = s[256] & 0xff, j = s[257] & 0xff;
+        byte[] out = new byte[data.length];
+        for (int n = 0; n < data.length; n++) {
+            i = (i + 1) & 0xff;
+            j = (j + s[i]) & 0xff;
+            byte t = s[i];
+            s[i] = s[j];
+            s[j] = t;
+            out[n] = (byte) (data[n] ^ s[(s[i] + s[j]) & 0xff]);
+        }
+        return out;
+    }
+
+    private IllegalStateException fail(Exception e) {
+        return new IllegalStateException(e);
+    }
+}
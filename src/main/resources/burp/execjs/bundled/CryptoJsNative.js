@@ -0,0 +1,320 @@
+/*
+ * BurpCrypto native CryptoJS shim.
+ * Runs after the user code: hot CryptoJS entry points (hashers, HMAC, PBKDF2, EvpKDF, AES/DES/TripleDES and the
+ * Hex/Base64/Utf8 encoders) are routed to the JCE backed NativeCrypto host object. WordArray and CipherParams of
+ * an existing CryptoJS bundle are reused so results mix freely with the rest of the library, a minimal core is
+ * defined when the script has no CryptoJS at all. Anything the backend does not know (custom modes, paddings or
+ * hashers, non standard key sizes) falls back to the original implementation when there is one.
+ */
+(function (global) {
+    var host = typeof NativeCrypto === 'function' ? new NativeCrypto() : NativeCrypto;
+    var C = global.CryptoJS = global.CryptoJS || {};
+    var lib = C.lib = C.lib || {};
+    var enc = C.enc = C.enc || {};
+    var algo = C.algo = C.algo || {};
+
+    function marker() {
+        return {};
+    }
+
+    if (!lib.Base) {
+        lib.Base = {
+            extend: function (overrides) {
+                var subtype = Object.create(this);
+                if (overrides) {
+                    subtype.mixIn(overrides);
+                }
+                if (!subtype.hasOwnProperty('init') || this.init === subtype.init) {
+                    subtype.init = function () {
+                        subtype.$super.init.apply(this, arguments);
+                    };
+                }
+                subtype.init.prototype = subtype;
+                subtype.$super = this;
+                return subtype;
+            },
+            create: function () {
+                var instance = this.extend();
+                instance.init.apply(instance, arguments);
+                return instance;
+            },
+            init: function () {
+            },
+            mixIn: function (properties) {
+                for (var name in properties) {
+                    if (properties.hasOwnProperty(name)) {
+                        this[name] = properties[name];
+                    }
+                }
+                if (properties.hasOwnProperty('toString')) {
+                    this.toString = properties.toString;
+                }
+            },
+            clone: function () {
+                return this.init.prototype.extend(this);
+            }
+        };
+    }
+    if (!lib.WordArray) {
+        lib.WordArray = lib.Base.extend({
+            init: function (words, sigBytes) {
+                words = this.words = words || [];
+                this.sigBytes = sigBytes != undefined ? sigBytes : words.length * 4;
+            },
+            toString: function (encoder) {
+                return (encoder || enc.Hex).stringify(this);
+            },
+            concat: function (wordArray) {
+                var joined = fromLatin1(toLatin1(this) + toLatin1(wordArray));
+                this.words = joined.words;
+                this.sigBytes = joined.sigBytes;
+                return this;
+            },
+            clamp: function () {
+                var words = this.words, sigBytes = this.sigBytes;
+                words[sigBytes >>> 2] &= 0xffffffff << (32 - (sigBytes % 4) * 8);
+                words.length = Math.ceil(sigBytes / 4);
+            },
+            clone: function () {
+                var clone = lib.Base.clone.call(this);
+                clone.words = this.words.slice(0);
+                return clone;
+            }
+        });
+        lib.WordArray.random = function (nBytes) {
+            return fromLatin1(host.randomBytes(nBytes));
+        };
+    }
+    if (!lib.CipherParams) {
+        lib.CipherParams = lib.Base.extend({
+            init: function (cipherParams) {
+                this.mixIn(cipherParams);
+            },
+            toString: function (formatter) {
+                return (formatter || this.formatter).stringify(this);
+            }
+        });
+    }
+    C.format = C.format || {};
+    if (!C.format.OpenSSL) {
+        C.format.OpenSSL = {
+            stringify: function (cipherParams) {
+                var data = toLatin1(cipherParams.ciphertext);
+                if (cipherParams.salt) {
+                    data = 'Salted__' + toLatin1(cipherParams.salt) + data;
+                }
+                return host.base64Encode(data);
+            },
+            parse: function (openSSLStr) {
+                var data = host.base64Decode(openSSLStr), salt;
+                if (data.substr(0, 8) == 'Salted__') {
+                    salt = fromLatin1(data.substr(8, 8));
+                    data = data.substr(16);
+                }
+                return lib.CipherParams.create({ciphertext: fromLatin1(data), salt: salt});
+            }
+        };
+    }
+    C.mode = C.mode || {};
+    C.pad = C.pad || {};
+    var modes = ['CBC', 'ECB', 'CFB', 'OFB', 'CTR'];
+    var paddings = ['Pkcs7', 'ZeroPadding', 'NoPadding', 'Iso10126', 'AnsiX923', 'Iso97971'];
+    var hashers = ['MD5', 'SHA1', 'SHA224', 'SHA256', 'SHA384', 'SHA512'];
+    modes.forEach(function (name) {
+        C.mode[name] = C.mode[name] || marker();
+    });
+    paddings.forEach(function (name) {
+        C.pad[name] = C.pad[name] || marker();
+    });
+
+    function lookup(table, names, value, fallback) {
+        if (value == undefined) {
+            return fallback;
+        }
+        for (var i = 0; i < names.length; i++) {
+            if (table[names[i]] === value) {
+                return names[i];
+            }
+        }
+        return null;
+    }
+
+    function toLatin1(wordArray) {
+        var words = wordArray.words, sigBytes = wordArray.sigBytes, chunk = [], result = '';
+        for (var i = 0; i < sigBytes; i++) {
+            chunk.push((words[i >>> 2] >>> (24 - (i % 4) * 8)) & 0xff);
+            if (chunk.length == 8192) {
+                result += String.fromCharCode.apply(null, chunk);
+                chunk = [];
+            }
+        }
+        return result + String.fromCharCode.apply(null, chunk);
+    }
+
+    function fromLatin1(str) {
+        str = String(str);
+        var words = [], length = str.length;
+        for (var i = 0; i < length; i++) {
+            words[i >>> 2] |= (str.charCodeAt(i) & 0xff) << (24 - (i % 4) * 8);
+        }
+        return lib.WordArray.create(words, length);
+    }
+
+    function toData(value) {
+        return typeof value == 'string' || value instanceof String ? host.utf8Encode(value) : toLatin1(value);
+    }
+
+    // --- encoders, patched in place because bundles keep references to them in closures.
+    function encoder(name, stringify, parse) {
+        var target = enc[name] = enc[name] || {};
+        target.stringify = stringify;
+        target.parse = parse;
+    }
+
+    encoder('Hex', function (wordArray) {
+        return host.hexEncode(toLatin1(wordArray));
+    }, function (hexStr) {
+        return fromLatin1(host.hexDecode(hexStr));
+    });
+    encoder('Base64', function (wordArray) {
+        return host.base64Encode(toLatin1(wordArray));
+    }, function (base64Str) {
+        return fromLatin1(host.base64Decode(base64Str));
+    });
+    encoder('Utf8', function (wordArray) {
+        return String(host.utf8Decode(toLatin1(wordArray)));
+    }, function (utf8Str) {
+        return fromLatin1(host.utf8Encode(utf8Str));
+    });
+    encoder('Latin1', function (wordArray) {
+        return toLatin1(wordArray);
+    }, function (latin1Str) {
+        return fromLatin1(latin1Str);
+    });
+
+    // --- hashers and HMAC
+    hashers.forEach(function (name) {
+        if (!algo[name]) {
+            algo[name] = {
+                create: function () {
+                    var data = '';
+                    return {
+                        update: function (message) {
+                            data += toData(message);
+                            return this;
+                        },
+                        finalize: function (message) {
+                            if (message != undefined) {
+                                this.update(message);
+                            }
+                            return fromLatin1(host.digest(name, data));
+                        },
+                        reset: function () {
+                            data = '';
+                        }
+                    };
+                }
+            };
+        }
+        C[name] = function (message) {
+            return fromLatin1(host.digest(name, toData(message)));
+        };
+        C['Hmac' + name] = function (message, key) {
+            return fromLatin1(host.hmac(name, toData(key), toData(message)));
+        };
+    });
+
+    // --- key derivation
+    function kdf(name, defaults) {
+        var previous = C[name];
+        var bundleDefaults = (algo[name] && algo[name].cfg) || {};
+        C[name] = function (password, salt, cfg) {
+            cfg = cfg || {};
+            var hasher = lookup(algo, hashers, cfg.hasher || bundleDefaults.hasher, defaults.hasher);
+            if (!hasher) {
+                if (!previous) {
+                    throw new Error('unsupported ' + name + ' hasher.');
+                }
+                return previous.apply(this, arguments);
+            }
+            var keySize = cfg.keySize || bundleDefaults.keySize || defaults.keySize;
+            var iterations = cfg.iterations || bundleDefaults.iterations || defaults.iterations;
+            return fromLatin1(host[name == 'PBKDF2' ? 'pbkdf2' : 'evpKdf'](hasher, toData(password), toData(salt), iterations, keySize * 4));
+        };
+    }
+
+    // CryptoJS up to 4.1 defaults, a bundled CryptoJS overrides them through algo.<KDF>.cfg.
+    kdf('PBKDF2', {keySize: 128 / 32, hasher: 'SHA1', iterations: 1});
+    kdf('EvpKDF', {keySize: 128 / 32, hasher: 'MD5', iterations: 1});
+
+    // --- ciphers
+    function cipher(name, keyWords, ivWords) {
+        var previous = C[name];
+        var blockWords = name == 'AES' ? 4 : 2;
+
+        function prepare(key, cfg, salt) {
+            if (typeof key == 'string' || key instanceof String) {
+                salt = salt ? toLatin1(salt) : host.randomBytes(8);
+                var derived = host.evpKdf('MD5', host.utf8Encode(key), salt, 1, (keyWords + ivWords) * 4);
+                return {key: derived.substr(0, keyWords * 4), iv: derived.substr(keyWords * 4), salt: salt};
+            }
+            return {key: toLatin1(key), iv: cfg.iv ? toLatin1(cfg.iv) : ''};
+        }
+
+        C[name] = {
+            encrypt: function (message, key, cfg) {
+                cfg = cfg || {};
+                var mode = lookup(C.mode, modes, cfg.mode, 'CBC'), padding = lookup(C.pad, paddings, cfg.padding, 'Pkcs7');
+                if (mode && padding) {
+                    try {
+                        var params = prepare(key, cfg, cfg.salt);
+                        var ciphertext = host.cipher(true, name, mode, padding, params.key, params.iv, toData(message));
+                        return lib.CipherParams.create({
+                            ciphertext: fromLatin1(ciphertext),
+                            key: fromLatin1(params.key),
+                            iv: params.iv ? fromLatin1(params.iv) : undefined,
+                            salt: params.salt != undefined ? fromLatin1(params.salt) : undefined,
+                            algorithm: algo[name],
+                            mode: cfg.mode || C.mode.CBC,
+                            padding: cfg.padding || C.pad.Pkcs7,
+                            blockSize: blockWords,
+                            formatter: cfg.format || C.format.OpenSSL
+                        });
+                    } catch (e) {
+                        if (!previous) {
+                            throw e;
+                        }
+                    }
+                }
+                if (!previous) {
+                    throw new Error('unsupported ' + name + ' configuration.');
+                }
+                return previous.encrypt.apply(previous, arguments);
+            },
+            decrypt: function (ciphertext, key, cfg) {
+                cfg = cfg || {};
+                var mode = lookup(C.mode, modes, cfg.mode, 'CBC'), padding = lookup(C.pad, paddings, cfg.padding, 'Pkcs7');
+                if (mode && padding) {
+                    try {
+                        var cipherParams = typeof ciphertext == 'string' || ciphertext instanceof String ?
+                            (cfg.format || C.format.OpenSSL).parse(ciphertext) : ciphertext;
+                        var params = prepare(key, cfg, cipherParams.salt);
+                        return fromLatin1(host.cipher(false, name, mode, padding, params.key, params.iv, toLatin1(cipherParams.ciphertext)));
+                    } catch (e) {
+                        if (!previous) {
+                            throw e;
+                        }
+                    }
+                }
+                if (!previous) {
+                    throw new Error('unsupported ' + name + ' configuration.');
+                }
+                return previous.decrypt.apply(previous, arguments);
+            }
+        };
+    }
+
+    cipher('AES', 8, 4);
+    cipher('DES', 2, 2);
+    cipher('TripleDES', 6, 2);
+})(this);
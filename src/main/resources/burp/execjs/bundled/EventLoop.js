@@ -0,0 +1,234 @@
+/*
+ * BurpCrypto event loop shim.
+ * Runs before the user code: provides queueMicrotask, setTimeout/setInterval and, when the engine has none, a
+ * Promise implementation on top of the EventLoop host object. __burpCryptoAwait(value, timeoutMillis) is called
+ * by the engines when a processor function returns a thenable, it runs queued tasks until that thenable settles.
+ */
+(function (global) {
+    var loop = typeof EventLoop === 'function' ? new EventLoop() : EventLoop;
+
+    function bind(callback, args) {
+        return function () {
+            callback.apply(global, args);
+        };
+    }
+
+    global.queueMicrotask = function (callback) {
+        loop.microtask(callback);
+    };
+    global.setTimeout = function (callback, delay) {
+        return loop.timer(bind(callback, Array.prototype.slice.call(arguments, 2)), delay || 0, false);
+    };
+    global.setInterval = function (callback, delay) {
+        return loop.timer(bind(callback, Array.prototype.slice.call(arguments, 2)), delay || 0, true);
+    };
+    global.setImmediate = function (callback) {
+        return loop.timer(bind(callback, Array.prototype.slice.call(arguments, 1)), 0, false);
+    };
+    global.clearTimeout = global.clearInterval = global.clearImmediate = function (id) {
+        if (id != undefined) {
+            loop.cancel(id);
+        }
+    };
+
+    if (typeof global.Promise != 'function') {
+        global.Promise = definePromise();
+    }
+
+    function definePromise() {
+        var PENDING = 0, FULFILLED = 1, REJECTED = 2;
+
+        var Promise = function (executor) {
+            this._state = PENDING;
+            this._reactions = [];
+            var once = guard(this);
+            try {
+                executor(once(resolve), once(reject));
+            } catch (e) {
+                once(reject)(e);
+            }
+        };
+
+        function guard(promise) {
+            var called = false;
+            return function (action) {
+                return function (value) {
+                    if (!called) {
+                        called = true;
+                        action(promise, value);
+                    }
+                };
+            };
+        }
+
+        function settle(promise, state, value) {
+            if (promise._state != PENDING) {
+                return;
+            }
+            promise._state = state;
+            promise._value = value;
+            var reactions = promise._reactions;
+            promise._reactions = null;
+            for (var i = 0; i < reactions.length; i++) {
+                schedule(promise, reactions[i]);
+            }
+        }
+
+        function reject(promise, reason) {
+            settle(promise, REJECTED, reason);
+        }
+
+        function resolve(promise, value) {
+            if (value === promise) {
+                return reject(promise, new TypeError('a promise cannot resolve to itself.'));
+            }
+            if (value && (typeof value == 'object' || typeof value == 'function')) {
+                var then;
+                try {
+                    then = value.then;
+                } catch (e) {
+                    return reject(promise, e);
+                }
+                if (typeof then == 'function') {
+                    var once = guard(promise);
+                    try {
+                        then.call(value, once(resolve), once(reject));
+                    } catch (e) {
+                        once(reject)(e);
+                    }
+                    return;
+                }
+            }
+            settle(promise, FULFILLED, value);
+        }
+
+        function schedule(promise, reaction) {
+            loop.microtask(function () {
+                var fulfilled = promise._state == FULFILLED;
+                var callback = fulfilled ? reaction.onFulfilled : reaction.onRejected;
+                if (typeof callback != 'function') {
+                    (fulfilled ? reaction.resolve : reaction.reject)(promise._value);
+                    return;
+                }
+                var result;
+                try {
+                    result = callback(promise._value);
+                } catch (e) {
+                    reaction.reject(e);
+                    return;
+                }
+                reaction.resolve(result);
+            });
+        }
+
+        Promise.prototype.then = function (onFulfilled, onRejected) {
+            var self = this;
+            return new Promise(function (resolve, reject) {
+                var reaction = {onFulfilled: onFulfilled, onRejected: onRejected, resolve: resolve, reject: reject};
+                if (self._state == PENDING) {
+                    self._reactions.push(reaction);
+                } else {
+                    schedule(self, reaction);
+                }
+            });
+        };
+        Promise.prototype['catch'] = function (onRejected) {
+            return this.then(undefined, onRejected);
+        };
+        Promise.prototype['finally'] = function (callback) {
+            return this.then(function (value) {
+                return Promise.resolve(callback()).then(function () {
+                    return value;
+                });
+            }, function (reason) {
+                return Promise.resolve(callback()).then(function () {
+                    throw reason;
+                });
+            });
+        };
+        Promise.resolve = function (value) {
+            if (value instanceof Promise) {
+                return value;
+            }
+            return new Promise(function (resolve) {
+                resolve(value);
+            });
+        };
+        Promise.reject = function (reason) {
+            return new Promise(function (resolve, reject) {
+                reject(reason);
+            });
+        };
+        Promise.all = function (values) {
+            return new Promise(function (resolve, reject) {
+                var results = [], remaining = values.length;
+                if (remaining == 0) {
+                    resolve(results);
+                }
+                for (var i = 0; i < values.length; i++) {
+                    (function (index) {
+                        Promise.resolve(values[index]).then(function (value) {
+                            results[index] = value;
+                            if (--remaining == 0) {
+                                resolve(results);
+                            }
+                        }, reject);
+                    })(i);
+                }
+            });
+        };
+        Promise.allSettled = function (values) {
+            return Promise.all(values.map(function (value) {
+                return Promise.resolve(value).then(function (result) {
+                    return {status: 'fulfilled', value: result};
+                }, function (reason) {
+                    return {status: 'rejected', reason: reason};
+                });
+            }));
+        };
+        Promise.race = function (values) {
+            return new Promise(function (resolve, reject) {
+                for (var i = 0; i < values.length; i++) {
+                    Promise.resolve(values[i]).then(resolve, reject);
+                }
+            });
+        };
+        return Promise;
+    }
+
+    global.__burpCryptoAwait = function (value, timeoutMillis) {
+        if (!value || typeof value.then != 'function') {
+            return value;
+        }
+        var settled = false, fulfilled, result;
+        value.then(function (v) {
+            settled = true;
+            fulfilled = true;
+            result = v;
+        }, function (e) {
+            settled = true;
+            fulfilled = false;
+            result = e;
+        });
+        var deadline = new Date().getTime() + timeoutMillis;
+        try {
+            while (!settled) {
+                var task = loop.next(Math.max(0, deadline - new Date().getTime()));
+                if (new Date().getTime() >= deadline) {
+                    throw new Error('promise did not settle within ' + timeoutMillis + ' ms.');
+                }
+                if (task == null) {
+                    throw new Error('promise can never settle, no task is left to run.');
+                }
+                task();
+            }
+        } finally {
+            // whatever is still queued belongs to this payload, the next one starts clean.
+            loop.clear();
+        }
+        if (!fulfilled) {
+            throw result;
+        }
+        return result;
+    };
+})(this);
@@ -0,0 +1,291 @@
+/*
+ * BurpCrypto WebCrypto shim.
+ * Runs before the user code and provides crypto.getRandomValues, crypto.randomUUID and the common crypto.subtle
+ * algorithms (SHA digests, HMAC, PBKDF2, AES-GCM/CBC/CTR, RSA-OAEP, RSASSA-PKCS1-v1_5) on top of the JCE backed
+ * NativeCrypto host object. It runs after the event loop shim, so results are the same Promise type as everywhere
+ * else: the work itself is done right away, then() callbacks run as microtasks like in a browser, and a returned
+ * promise is waited for by __burpCryptoAwait.
+ */
+(function (global) {
+    var host = typeof NativeCrypto === 'function' ? new NativeCrypto() : NativeCrypto;
+    var crypto = global.crypto = global.crypto || {};
+    var Promise = global.Promise;
+
+    // a thrown error becomes a rejection, as subtle never throws synchronously.
+    function attempt(fn) {
+        return new Promise(function (resolve) {
+            resolve(fn());
+        });
+    }
+
+    // --- binary data, passed to the host as latin1 strings
+    function toLatin1(data) {
+        var bytes;
+        if (data instanceof ArrayBuffer) {
+            bytes = new Uint8Array(data);
+        } else if (data && data.buffer instanceof ArrayBuffer) {
+            bytes = new Uint8Array(data.buffer, data.byteOffset, data.byteLength);
+        } else if (data == undefined) {
+            return '';
+        } else {
+            throw new TypeError('expected an ArrayBuffer or ArrayBufferView.');
+        }
+        var chunk = [], result = '';
+        for (var i = 0; i < bytes.length; i++) {
+            chunk.push(bytes[i]);
+            if (chunk.length == 8192) {
+                result += String.fromCharCode.apply(null, chunk);
+                chunk = [];
+            }
+        }
+        return result + String.fromCharCode.apply(null, chunk);
+    }
+
+    function fromLatin1(str) {
+        str = String(str);
+        var bytes = new Uint8Array(str.length);
+        for (var i = 0; i < str.length; i++) {
+            bytes[i] = str.charCodeAt(i);
+        }
+        return bytes.buffer;
+    }
+
+    function base64Url(latin1) {
+        return String(host.base64Encode(latin1)).replace(/\+/g, '-').replace(/\//g, '_').replace(/=+$/, '');
+    }
+
+    // --- algorithm names
+    var hashes = {'SHA-1': 'SHA1', 'SHA-256': 'SHA256', 'SHA-384': 'SHA384', 'SHA-512': 'SHA512'};
+    var hmacBlockBits = {'SHA-1': 512, 'SHA-256': 512, 'SHA-384': 1024, 'SHA-512': 1024};
+
+    function normalize(algorithm) {
+        if (typeof algorithm == 'string' || algorithm instanceof String) {
+            algorithm = {name: String(algorithm)};
+        }
+        var copy = {};
+        for (var name in algorithm) {
+            copy[name] = algorithm[name];
+        }
+        copy.name = String(copy.name).toUpperCase();
+        if (copy.hash) {
+            copy.hash = normalize(copy.hash);
+            if (!hashes[copy.hash.name]) {
+                throw new Error('NotSupportedError: hash ' + copy.hash.name);
+            }
+        }
+        if (copy.name == 'RSASSA-PKCS1-V1_5') {
+            copy.name = 'RSASSA-PKCS1-v1_5';
+        }
+        return copy;
+    }
+
+    function hostHash(algorithm) {
+        return hashes[algorithm.hash.name];
+    }
+
+    function CryptoKey(type, extractable, algorithm, usages, material) {
+        this.type = type;
+        this.extractable = extractable;
+        this.algorithm = algorithm;
+        this.usages = usages || [];
+        this.material = material;
+    }
+
+    function secretKey(algorithm, extractable, usages, raw) {
+        if (algorithm.name == 'HMAC' || algorithm.name.indexOf('AES') == 0) {
+            algorithm.length = raw.length * 8;
+        }
+        return new CryptoKey('secret', extractable, algorithm, usages, raw);
+    }
+
+    function rsaKey(algorithm, extractable, usages, der, isPrivate) {
+        var jwk = JSON.parse(host.rsaExportJwk(isPrivate, der));
+        algorithm.modulusLength = host.base64Decode(jwk.n).length * 8;
+        algorithm.publicExponent = new Uint8Array(fromLatin1(host.base64Decode(jwk.e)));
+        return new CryptoKey(isPrivate ? 'private' : 'public', extractable, algorithm, usages, der);
+    }
+
+    function isRsa(algorithm) {
+        return algorithm.name == 'RSA-OAEP' || algorithm.name == 'RSASSA-PKCS1-v1_5';
+    }
+
+    function importKey(format, keyData, algorithm, extractable, usages) {
+        algorithm = normalize(algorithm);
+        if (isRsa(algorithm)) {
+            if (format == 'jwk') {
+                var isPrivate = !!keyData.d;
+                return rsaKey(algorithm, extractable, usages, host.rsaImportJwk(keyData.n, keyData.e, keyData.d || '',
+                    keyData.p || '', keyData.q || '', keyData.dp || '', keyData.dq || '', keyData.qi || ''), isPrivate);
+            }
+            if (format == 'spki' || format == 'pkcs8') {
+                return rsaKey(algorithm, extractable, usages, toLatin1(keyData), format == 'pkcs8');
+            }
+        } else if (format == 'raw') {
+            return secretKey(algorithm, extractable, usages, toLatin1(keyData));
+        } else if (format == 'jwk' && keyData.kty == 'oct') {
+            return secretKey(algorithm, extractable, usages, host.base64Decode(keyData.k));
+        }
+        throw new Error('NotSupportedError: ' + format + ' import of ' + algorithm.name);
+    }
+
+    function exportKey(format, key) {
+        if (!key.extractable) {
+            throw new Error('InvalidAccessError: key is not extractable.');
+        }
+        if (key.type == 'secret') {
+            if (format == 'raw') {
+                return fromLatin1(key.material);
+            }
+            if (format == 'jwk') {
+                return {kty: 'oct', k: base64Url(key.material), ext: true, key_ops: key.usages};
+            }
+        } else if (format == 'jwk') {
+            var jwk = JSON.parse(host.rsaExportJwk(key.type == 'private', key.material));
+            jwk.ext = true;
+            jwk.key_ops = key.usages;
+            return jwk;
+        } else if (format == (key.type == 'private' ? 'pkcs8' : 'spki')) {
+            return fromLatin1(key.material);
+        }
+        throw new Error('NotSupportedError: ' + format + ' export of a ' + key.type + ' key.');
+    }
+
+    function generateKey(algorithm, extractable, usages) {
+        algorithm = normalize(algorithm);
+        if (isRsa(algorithm)) {
+            var pkcs8 = host.rsaGenerate(algorithm.modulusLength, toLatin1(algorithm.publicExponent));
+            var publicUsages = [], privateUsages = [];
+            (usages || []).forEach(function (usage) {
+                (usage == 'encrypt' || usage == 'verify' || usage == 'wrapKey' ? publicUsages : privateUsages).push(usage);
+            });
+            return {
+                publicKey: rsaKey(normalize(algorithm), true, publicUsages, host.rsaPublicKey(pkcs8), false),
+                privateKey: rsaKey(algorithm, extractable, privateUsages, pkcs8, true)
+            };
+        }
+        var bits = algorithm.length || (algorithm.name == 'HMAC' ? hmacBlockBits[algorithm.hash.name] : 0);
+        if (!bits) {
+            throw new Error('NotSupportedError: generateKey of ' + algorithm.name);
+        }
+        return secretKey(algorithm, extractable, usages, host.randomBytes(bits / 8));
+    }
+
+    function cipher(encrypt, algorithm, key, data) {
+        algorithm = normalize(algorithm);
+        data = toLatin1(data);
+        switch (algorithm.name) {
+            case 'AES-GCM':
+                return host.aesCipher(encrypt, 'GCM', key.material, toLatin1(algorithm.iv), toLatin1(algorithm.additionalData),
+                    algorithm.tagLength || 128, data);
+            case 'AES-CBC':
+                return host.aesCipher(encrypt, 'CBC', key.material, toLatin1(algorithm.iv), '', 0, data);
+            case 'AES-CTR':
+                return host.aesCipher(encrypt, 'CTR', key.material, toLatin1(algorithm.counter), '', 0, data);
+            case 'RSA-OAEP':
+                return host.rsaOaep(encrypt, hostHash(key.algorithm), key.material, toLatin1(algorithm.label), data);
+        }
+        throw new Error('NotSupportedError: ' + algorithm.name);
+    }
+
+    function sign(algorithm, key, data) {
+        algorithm = normalize(algorithm);
+        if (algorithm.name == 'HMAC') {
+            return host.hmac(hostHash(key.algorithm), key.material, toLatin1(data));
+        }
+        if (algorithm.name == 'RSASSA-PKCS1-v1_5') {
+            return host.rsaSign(hostHash(key.algorithm), key.material, toLatin1(data));
+        }
+        throw new Error('NotSupportedError: ' + algorithm.name);
+    }
+
+    function verify(algorithm, key, signature, data) {
+        algorithm = normalize(algorithm);
+        if (algorithm.name == 'RSASSA-PKCS1-v1_5') {
+            return host.rsaVerify(hostHash(key.algorithm), key.material, toLatin1(signature), toLatin1(data));
+        }
+        return sign(algorithm, key, data) == toLatin1(signature);
+    }
+
+    function deriveBits(algorithm, baseKey, length) {
+        algorithm = normalize(algorithm);
+        if (algorithm.name != 'PBKDF2') {
+            throw new Error('NotSupportedError: ' + algorithm.name);
+        }
+        return host.pbkdf2(hostHash(algorithm), baseKey.material, toLatin1(algorithm.salt), algorithm.iterations, length / 8);
+    }
+
+    function deriveKey(algorithm, baseKey, derivedKeyType, extractable, usages) {
+        derivedKeyType = normalize(derivedKeyType);
+        var bits = derivedKeyType.length || (derivedKeyType.name == 'HMAC' ? hmacBlockBits[derivedKeyType.hash.name] : 0);
+        return secretKey(derivedKeyType, extractable, usages, deriveBits(algorithm, baseKey, bits));
+    }
+
+    crypto.subtle = {
+        digest: function (algorithm, data) {
+            return attempt(function () {
+                return fromLatin1(host.digest(hashes[normalize(algorithm).name], toLatin1(data)));
+            });
+        },
+        importKey: function (format, keyData, algorithm, extractable, usages) {
+            return attempt(function () {
+                return importKey(format, keyData, algorithm, extractable, usages);
+            });
+        },
+        exportKey: function (format, key) {
+            return attempt(function () {
+                return exportKey(format, key);
+            });
+        },
+        generateKey: function (algorithm, extractable, usages) {
+            return attempt(function () {
+                return generateKey(algorithm, extractable, usages);
+            });
+        },
+        encrypt: function (algorithm, key, data) {
+            return attempt(function () {
+                return fromLatin1(cipher(true, algorithm, key, data));
+            });
+        },
+        decrypt: function (algorithm, key, data) {
+            return attempt(function () {
+                return fromLatin1(cipher(false, algorithm, key, data));
+            });
+        },
+        sign: function (algorithm, key, data) {
+            return attempt(function () {
+                return fromLatin1(sign(algorithm, key, data));
+            });
+        },
+        verify: function (algorithm, key, signature, data) {
+            return attempt(function () {
+                return verify(algorithm, key, signature, data);
+            });
+        },
+        deriveBits: function (algorithm, baseKey, length) {
+            return attempt(function () {
+                return fromLatin1(deriveBits(algorithm, baseKey, length));
+            });
+        },
+        deriveKey: function (algorithm, baseKey, derivedKeyType, extractable, usages) {
+            return attempt(function () {
+                return deriveKey(algorithm, baseKey, derivedKeyType, extractable, usages);
+            });
+        }
+    };
+
+    crypto.getRandomValues = function (array) {
+        var random = host.randomBytes(array.byteLength);
+        var bytes = new Uint8Array(array.buffer, array.byteOffset, array.byteLength);
+        for (var i = 0; i < random.length; i++) {
+            bytes[i] = random.charCodeAt(i);
+        }
+        return array;
+    };
+    crypto.randomUUID = function () {
+        var hex = String(host.hexEncode(host.randomBytes(16))).split('');
+        hex[12] = '4';
+        hex[16] = '89ab'.charAt(parseInt(hex[16], 16) & 3);
+        hex = hex.join('');
+        return [hex.substr(0, 8), hex.substr(8, 4), hex.substr(12, 4), hex.substr(16, 4), hex.substr(20)].join('-');
+    };
+})(this);